@@ -0,0 +1,21 @@
+package com.example.event;
+
+import org.springframework.context.ApplicationEvent;
+
+import com.example.rest.model.Publication;
+
+public class OnPublicationCreatedEvent extends ApplicationEvent {
+
+	private static final long serialVersionUID = 1L;
+
+	private final Publication publication;
+
+	public OnPublicationCreatedEvent(final Publication publication) {
+		super(publication);
+		this.publication = publication;
+	}
+
+	public Publication getPublication() {
+		return publication;
+	}
+}
@@ -7,13 +7,13 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.MessageSource;
 import org.springframework.context.event.EventListener;
 import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.example.event.OnPasswordResetRequestedEvent;
 import com.example.rest.model.User;
 import com.example.service.AuthService;
+import com.example.service.MailOutbox;
 
 @Component
 public class PasswordResetListener {
@@ -25,13 +25,13 @@ public class PasswordResetListener {
     private MessageSource messages;
 	
 	@Autowired
-    private JavaMailSender mailSender;
+    private MailOutbox mailOutbox;
 	
 	@Value("${support.email}")
 	private String supportEmail;
 
-	@Async
 	@EventListener
+	@Transactional
 	public void onApplicationEvent(final OnPasswordResetRequestedEvent event) {
 		this.confirmReset(event);
 	}
@@ -42,7 +42,7 @@ public class PasswordResetListener {
         authService.createPasswordResetTokenForUser(user, token);
         
         final SimpleMailMessage email = constructEmailMessage(event, user, token);
-        mailSender.send(email);
+        mailOutbox.enqueue(email);
     }
 
     private SimpleMailMessage constructEmailMessage(final OnPasswordResetRequestedEvent event, final User user, final String token) {
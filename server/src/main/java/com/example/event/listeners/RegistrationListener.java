@@ -7,13 +7,13 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.MessageSource;
 import org.springframework.context.event.EventListener;
 import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.example.event.OnRegistrationCompleteEvent;
 import com.example.rest.model.User;
 import com.example.service.AuthService;
+import com.example.service.MailOutbox;
 
 @Component
 public class RegistrationListener {
@@ -25,7 +25,7 @@ public class RegistrationListener {
     private MessageSource messages;
 	
 	@Autowired
-    private JavaMailSender mailSender;
+    private MailOutbox mailOutbox;
 
 	@Value("${support.email}")
 	private String supportEmail;
@@ -33,8 +33,8 @@ public class RegistrationListener {
 	@Value("${app.frontend.url}")
 	private String url;
 	
-	@Async
 	@EventListener
+	@Transactional
 	public void onApplicationEvent(final OnRegistrationCompleteEvent event) {
 		this.confirmRegistration(event);	
 	}
@@ -45,7 +45,7 @@ public class RegistrationListener {
         authService.createVerificationTokenForUser(user, token);
 
         final SimpleMailMessage email = constructEmailMessage(event, user, token);
-        mailSender.send(email);
+        mailOutbox.enqueue(email);
     }
 
     private SimpleMailMessage constructEmailMessage(final OnRegistrationCompleteEvent event, final User user, final String token) {
@@ -0,0 +1,22 @@
+package com.example.event.listeners;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.example.event.OnPublicationCreatedEvent;
+import com.example.service.TimelineService;
+
+@Component
+public class TimelineFanOutListener {
+
+	@Autowired
+	private TimelineService timelineService;
+
+	@Async
+	@TransactionalEventListener
+	public void onApplicationEvent(final OnPublicationCreatedEvent event) {
+		timelineService.fanOut(event.getPublication());
+	}
+}
@@ -8,35 +8,46 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+import org.springframework.security.web.util.matcher.OrRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
-import com.example.service.impl.UserDetailsServiceImpl;
+import com.example.spring.WebSecurityConfig;
 
+/**
+ * Reads the bearer token of the request. On endpoints that require
+ * authentication the user is resolved right away; on public ones the token is
+ * only parked in the security context and checked if the request ends up
+ * asking who the current user is. Media downloads are skipped entirely.
+ */
 @Component
 public class AuthTokenFilter extends OncePerRequestFilter {
-	
-	@Autowired
-	private JwtUtils jwtUtils;
+
+	private static final RequestMatcher PUBLIC = matcher(null, WebSecurityConfig.PUBLIC_PATHS);
+	private static final RequestMatcher MEDIA = matcher(HttpMethod.GET, WebSecurityConfig.MEDIA_PATHS);
 
 	@Autowired
-	private UserDetailsServiceImpl userDetailsService;
+	private JwtAuthenticationResolver resolver;
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		return MEDIA.matches(request);
+	}
 
 	@Override
 	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
 			throws ServletException, IOException {
 		
 		String jwt = parseJwt(request);
-		if (jwt != null && jwtUtils.validateJwtToken(jwt)) {
-			String username = jwtUtils.getUserNameFromJwtToken(jwt);
-			var userDetails = userDetailsService.loadUserByUsername(username);
-			var authentication = new UsernamePasswordAuthenticationToken(
-					userDetails, null, userDetails.getAuthorities());
-			authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+		if (jwt != null) {
+			var pending = new PendingJwtAuthenticationToken(jwt, new WebAuthenticationDetailsSource().buildDetails(request));
+			var authentication = PUBLIC.matches(request) ? pending : resolver.resolve(pending);
 
 			SecurityContextHolder.getContext().setAuthentication(authentication);
 		}
@@ -52,4 +63,13 @@ public class AuthTokenFilter extends OncePerRequestFilter {
 
 		return null;
 	}
-}
\ No newline at end of file
+
+	private static RequestMatcher matcher(HttpMethod method, String... patterns) {
+		var matchers = new RequestMatcher[patterns.length];
+
+		for (var i = 0; i < patterns.length; i++) {
+			matchers[i] = new AntPathRequestMatcher(patterns[i], method == null ? null : method.name());
+		}
+		return new OrRequestMatcher(matchers);
+	}
+}
@@ -0,0 +1,62 @@
+package com.example.jwt;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import com.example.rest.model.User;
+import com.example.service.impl.UserDetailsServiceImpl;
+
+/**
+ * Turns a {@link PendingJwtAuthenticationToken} into the authentication it
+ * stands for: the user behind a valid token, anonymous otherwise. The result
+ * is stored in the current security context, which the async executor shares
+ * with the request thread, so a token is resolved at most once per request.
+ */
+@Component
+public class JwtAuthenticationResolver {
+
+	@Autowired
+	private JwtUtils jwtUtils;
+
+	@Autowired
+	private UserDetailsServiceImpl userDetailsService;
+
+	@Autowired
+	private PrincipalCache principalCache;
+
+	public Authentication resolve() {
+		var context = SecurityContextHolder.getContext();
+		var authentication = context.getAuthentication();
+
+		if (authentication instanceof PendingJwtAuthenticationToken) {
+			authentication = resolve((PendingJwtAuthenticationToken) authentication);
+			context.setAuthentication(authentication);
+		}
+		return authentication;
+	}
+
+	public Authentication resolve(PendingJwtAuthenticationToken pending) {
+		var verified = jwtUtils.getVerifiedClaims(pending.getJwt());
+
+		if (verified.isEmpty()) {
+			var anonymous = new AnonymousAuthenticationToken("jwt", "anonymousUser",
+					AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"));
+			anonymous.setDetails(pending.getDetails());
+			return anonymous;
+		}
+
+		var claims = verified.get();
+		var issuedAt = claims.getIssuedAt() == null ? 0L : claims.getIssuedAt().getTime();
+		var userDetails = principalCache.get(claims.getSubject(), issuedAt,
+				() -> (User) userDetailsService.loadUserByUsername(claims.getSubject()));
+		var authentication = new UsernamePasswordAuthenticationToken(
+				userDetails, null, userDetails.getAuthorities());
+		authentication.setDetails(pending.getDetails());
+		return authentication;
+	}
+}
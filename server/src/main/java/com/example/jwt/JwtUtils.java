@@ -1,16 +1,31 @@
 package com.example.jwt;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Component;
 
 import com.example.rest.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 
 import io.jsonwebtoken.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 
 @Component
 public class JwtUtils {
@@ -22,6 +37,53 @@ public class JwtUtils {
 	@Value("${jwt.ExpirationMs}")
 	private int expireMS;
 
+	@Value("${jwt.claims-cache.max-size}")
+	private long cacheSize;
+
+	@Value("${jwt.claims-cache.ttl}")
+	private Duration cacheTtl;
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	private JwtParser parser;
+
+	/* Verified claims by SHA-256 of the token, never kept past the token expiry. */
+	private Cache<ByteBuffer, Claims> verified;
+
+	@PostConstruct
+	public void init() {
+		parser = Jwts.parser().setSigningKey(secret);
+		verified = Caffeine.newBuilder()
+				.maximumSize(cacheSize)
+				.expireAfter(new Expiry<ByteBuffer, Claims>() {
+					@Override
+					public long expireAfterCreate(ByteBuffer key, Claims claims, long currentTime) {
+						var ttl = cacheTtl.toNanos();
+						if (claims.getExpiration() != null) {
+							var left = TimeUnit.MILLISECONDS.toNanos(claims.getExpiration().getTime() - System.currentTimeMillis());
+							ttl = Math.max(0, Math.min(ttl, left));
+						}
+						return ttl;
+					}
+
+					@Override
+					public long expireAfterUpdate(ByteBuffer key, Claims claims, long currentTime, long currentDuration) {
+						return currentDuration;
+					}
+
+					@Override
+					public long expireAfterRead(ByteBuffer key, Claims claims, long currentTime, long currentDuration) {
+						return currentDuration;
+					}
+				})
+				.recordStats()
+				.build();
+		if (meterRegistry != null) {
+			CaffeineCacheMetrics.monitor(meterRegistry, verified, "jwt-claims");
+		}
+	}
+
 	public String generateJwtToken(Authentication authentication) {
 
 		var userPrincipal = (User) authentication.getPrincipal();
@@ -33,14 +95,42 @@ public class JwtUtils {
 				.compact();
 	}
 
+	/**
+	 * Verifies the token and returns its claims, parsing it only the first time
+	 * it is seen. Invalid tokens are logged and never cached.
+	 *
+	 * @return the claims, or empty when the token is invalid or expired
+	 */
+	public Optional<Claims> getVerifiedClaims(String token) {
+		if (token == null || token.isEmpty()) {
+			log.error("JWT claims string is empty");
+			return Optional.empty();
+		}
+
+		var key = digest(token);
+		var claims = verified.getIfPresent(key);
+
+		if (claims == null) {
+			claims = parse(token);
+			if (claims == null) {
+				return Optional.empty();
+			}
+			verified.put(key, claims);
+		}
+		return Optional.of(claims);
+	}
+
 	public String getUserNameFromJwtToken(String token) {
-		return Jwts.parser().setSigningKey(secret).parseClaimsJws(token).getBody().getSubject();
+		return getVerifiedClaims(token).map(Claims::getSubject).orElse(null);
 	}
 
 	public boolean validateJwtToken(String authToken) {
+		return getVerifiedClaims(authToken).isPresent();
+	}
+
+	private Claims parse(String authToken) {
 		try {
-			Jwts.parser().setSigningKey(secret).parseClaimsJws(authToken);
-			return true;
+			return parser.parseClaimsJws(authToken).getBody();
 		} catch (SignatureException e) {
 			log.error("Invalid JWT signature: {}", e.getMessage());
 		} catch (MalformedJwtException e) {
@@ -53,6 +143,14 @@ public class JwtUtils {
 			log.error("JWT claims string is empty: {}", e.getMessage());
 		}
 
-		return false;
+		return null;
+	}
+
+	private static ByteBuffer digest(String token) {
+		try {
+			return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
 	}
-}
\ No newline at end of file
+}
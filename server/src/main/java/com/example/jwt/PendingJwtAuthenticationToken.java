@@ -0,0 +1,27 @@
+package com.example.jwt;
+
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+/**
+ * Placeholder set by {@link AuthTokenFilter} on public endpoints: the request
+ * carries a bearer token that has not been verified yet. It counts as
+ * anonymous for authorization and is replaced by the real authentication the
+ * first time the current user is asked for, see {@link JwtAuthenticationResolver}.
+ */
+public class PendingJwtAuthenticationToken extends AnonymousAuthenticationToken {
+
+	private static final long serialVersionUID = 3177628449101525839L;
+
+	private final transient String jwt;
+
+	public PendingJwtAuthenticationToken(String jwt, Object details) {
+		super("jwt", "anonymousUser", AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"));
+		this.jwt = jwt;
+		setDetails(details);
+	}
+
+	public String getJwt() {
+		return jwt;
+	}
+}
@@ -0,0 +1,86 @@
+package com.example.jwt;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.example.rest.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Users resolved from a JWT, keyed by the token subject (the email) and its
+ * issue time so that a new login always starts from a fresh copy. Every
+ * change to a user's password, enabled flag, roles or avatar must call
+ * {@link #invalidate(String)}. Hit and miss counts are published as the
+ * {@code cache.*} metrics with the tag {@code cache=principals}.
+ */
+@Component
+public class PrincipalCache {
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${security.principal-cache.max-size}")
+	private long maxSize;
+
+	@Value("${security.principal-cache.ttl}")
+	private Duration ttl;
+
+	private Cache<Key, User> cache;
+
+	@PostConstruct
+	public void init() {
+		cache = Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(ttl)
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, cache, "principals");
+	}
+
+	public User get(String email, long issuedAt, Supplier<User> loader) {
+		return cache.get(new Key(email, issuedAt), k -> loader.get());
+	}
+
+	public void invalidate(String email) {
+		cache.asMap().keySet().removeIf(key -> key.email.equals(email));
+	}
+
+	private static final class Key {
+
+		private final String email;
+		private final long issuedAt;
+
+		private Key(String email, long issuedAt) {
+			this.email = email;
+			this.issuedAt = issuedAt;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			var other = (Key) o;
+			return issuedAt == other.issuedAt && email.equals(other.email);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(email, issuedAt);
+		}
+	}
+}
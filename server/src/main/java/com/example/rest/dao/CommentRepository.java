@@ -1,7 +1,10 @@
 package com.example.rest.dao;
 
-import org.springframework.data.domain.Page;
+import java.sql.Timestamp;
+import java.util.Optional;
+
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -10,16 +13,28 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.example.rest.model.Comment;
-import com.example.rest.model.Publication;
+import com.example.web.dto.response.CommentResDto;
 
 
 @Repository
 @Transactional(readOnly = true)
 public interface CommentRepository extends JpaRepository<Comment, Long> {
 	
-	int countByPost(Publication p);
+	@Query("SELECT c.post.id FROM Comment c WHERE c.id = (:id)")
+	Optional<Long> findPostIdById(@Param("id") Long id);
+	
+	String COMMENT_DTO = "SELECT new com.example.web.dto.response.CommentResDto("
+			+ "c.id, c.text, c.date, u.username, u.nom, u.prenom, u.avatarKey, u.has_avatar) "
+			+ "FROM Comment c JOIN c.utilisateur u ";
+	
+	@Query(COMMENT_DTO + "WHERE c.post.id = (:postId)")
+	Slice<CommentResDto> findAllByPostId(@Param("postId") Long id, Pageable paging);
 	
-	Page<Comment> findAllByPostId(Long id, Pageable paging);
+	@Query(COMMENT_DTO + "WHERE c.post.id = (:postId) "
+			+ "AND (c.date < (:date) OR (c.date = (:date) AND c.id < (:id))) "
+			+ "ORDER BY c.date DESC, c.id DESC")
+	Slice<CommentResDto> findAllByPostIdBefore(@Param("postId") Long postId, @Param("date") Timestamp date,
+			@Param("id") Long id, Pageable paging);
 	
 	@Modifying
 	@Query(	value = "DELETE c.* from comment c INNER JOIN post p on c.post_id=p.id INNER JOIN utilisateur u on c.user_id=u.id OR p.user_id=u.id WHERE c.id=:id AND u.username=:username", 
@@ -1,11 +1,12 @@
 package com.example.rest.dao;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.scheduling.annotation.Async;
@@ -15,6 +16,7 @@ import org.springframework.transaction.annotation.Transactional;
 import com.example.rest.model.Favori;
 import com.example.rest.model.Publication;
 import com.example.rest.model.User;
+import com.example.web.dto.response.PublicationDto;
 
 @Repository
 @Transactional(readOnly = true)
@@ -23,13 +25,20 @@ public interface FavoriRepository extends JpaRepository<Favori, Long> {
 	@Query("SELECT COUNT(f)>0 from Favori f WHERE f.utilisateur = (:user) AND post = (:post)")
 	boolean isLiked(@Param ("user") User user, @Param("post") Publication post);
 	
-	@Modifying
-	@Transactional
-	@Query("DELETE from Favori f WHERE f.utilisateur=(:user) AND f.post.id=(:id)")
-	void dislike(@Param("user") User user, @Param("id") Long id);
+	String FAVORITE_DTO = "SELECT new com.example.web.dto.response.PublicationDto(f.id, "
+			+ "p.id, p.description, p.date, p.storageKey, p.likeCount, p.commentCount, "
+			+ "u.username, u.nom, u.prenom, u.avatarKey, u.has_avatar) "
+			+ "FROM Favori f JOIN f.post p JOIN p.utilisateur u ";
 	
 	@Async
-	CompletableFuture<Slice<Favori>> findAllByUtilisateurUsername(String username, Pageable paging);
+	@Query(FAVORITE_DTO + "WHERE f.utilisateur.username = (:username)")
+	CompletableFuture<Slice<PublicationDto>> findAllByUtilisateurUsername(@Param("username") String username, Pageable paging);
 	
-	int countByPost(Publication post);
+	@Async
+	@Query(FAVORITE_DTO + "WHERE f.utilisateur.username = (:username) AND f.id < (:id) ORDER BY f.id DESC")
+	CompletableFuture<Slice<PublicationDto>> findAllByUtilisateurUsernameBefore(@Param("username") String username,
+			@Param("id") Long id, Pageable paging);
+	
+	@Query("SELECT f.post.id FROM Favori f WHERE f.utilisateur = (:user) AND f.post.id IN (:ids)")
+	List<Long> findLikedPostIds(@Param("user") User user, @Param("ids") Collection<Long> ids);
 }
@@ -1,9 +1,10 @@
 package com.example.rest.dao;
 
+import java.util.List;
+
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.scheduling.annotation.Async;
@@ -12,19 +13,17 @@ import org.springframework.transaction.annotation.Transactional;
 
 import com.example.rest.model.Follower;
 import com.example.rest.model.User;
+import com.example.web.dto.response.UserDto;
 
 @Repository
 @Transactional(readOnly = true)
 public interface FollowerRepository extends JpaRepository<Follower, Long> {
 
-	@Modifying
-	@Transactional
-	@Query(value = "DELETE f.* FROM  follower AS f CROSS JOIN utilisateur AS u ON f.to_id = u.id WHERE u.username=:username AND f.from_id=:user", nativeQuery = true)
-	int unfollow(@Param("user") User user, @Param("username") String username);
-	
 	@Query("SELECT COUNT(f)>0 from Follower f WHERE f.from = :user1 AND f.to = :user2")
 	boolean isFollowed(@Param ("user1") User currentUser, @Param("user2") User browsedUser);
 	
+	boolean existsByFromIdAndToId(Long fromId, Long toId);
+	
 	@Query("SELECT COUNT(f)>0 from Follower f WHERE f.from = :user1 AND f.to = :user2")
 	boolean isFollowing(@Param ("user1") User browsedUser, @Param("user2") User currentUser);
 	
@@ -34,9 +33,34 @@ public interface FollowerRepository extends JpaRepository<Follower, Long> {
 	@Query(value = "SELECT COUNT(from_id) FROM Follower f CROSS JOIN utilisateur u on f.from_id = u.id WHERE u.username= :username", nativeQuery=true)
 	Long countFollowing(@Param ("username") String username);
 	
-	Slice<Follower> findAllToByFromUsername(String username, Pageable paging);
+	long countByToId(Long id);
+	
+	long countByFromId(Long id);
+	
+	@Query("SELECT f.id, f.from.id, f.to.id FROM Follower f WHERE f.id > (:after) ORDER BY f.id")
+	List<Object[]> findEdgesAfter(@Param("after") Long after, Pageable page);
+	
+	@Query("SELECT a.to.id FROM Follower a, Follower b WHERE a.from.id = (:user1) AND b.from.id = (:user2) "
+			+ "AND a.to.id = b.to.id ORDER BY a.to.id")
+	List<Long> findFollowingInCommon(@Param("user1") Long user1, @Param("user2") Long user2);
+	
+	@Query("SELECT a.from.id FROM Follower a, Follower b WHERE a.to.id = (:user1) AND b.to.id = (:user2) "
+			+ "AND a.from.id = b.from.id ORDER BY a.from.id")
+	List<Long> findFollowersInCommon(@Param("user1") Long user1, @Param("user2") Long user2);
+	
+	String USER_DTO = "SELECT new com.example.web.dto.response.UserDto(f.id, u.id, u.nom, u.prenom, u.username, u.avatarKey, u.has_avatar) ";
+	
+	@Query(USER_DTO + "FROM Follower f JOIN f.to u WHERE f.from.username = (:username)")
+	Slice<UserDto> findAllToByFromUsername(@Param("username") String username, Pageable paging);
 
-	Slice<Follower> findAllFromByToUsername(String username, Pageable paging);
+	@Query(USER_DTO + "FROM Follower f JOIN f.from u WHERE f.to.username = (:username)")
+	Slice<UserDto> findAllFromByToUsername(@Param("username") String username, Pageable paging);
+	
+	@Query(USER_DTO + "FROM Follower f JOIN f.to u WHERE f.from.username = (:username) AND f.id < (:id) ORDER BY f.id DESC")
+	Slice<UserDto> findAllToByFromUsernameBefore(@Param("username") String username, @Param("id") Long id, Pageable paging);
+	
+	@Query(USER_DTO + "FROM Follower f JOIN f.from u WHERE f.to.username = (:username) AND f.id < (:id) ORDER BY f.id DESC")
+	Slice<UserDto> findAllFromByToUsernameBefore(@Param("username") String username, @Param("id") Long id, Pageable paging);
 	
 	@Override
 	@Async
@@ -0,0 +1,28 @@
+package com.example.rest.dao;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.rest.model.OrphanedFile;
+
+@Repository
+@Transactional(readOnly = true)
+public interface OrphanedFileRepository extends JpaRepository<OrphanedFile, Long> {
+
+	@Query("SELECT o FROM OrphanedFile o WHERE o.orphanedAt <= (:before) ORDER BY o.orphanedAt, o.id")
+	List<OrphanedFile> findDue(@Param("before") Timestamp before, Pageable page);
+
+	@Modifying
+	@Transactional
+	@Query("UPDATE OrphanedFile o SET o.orphanedAt = (:at) WHERE o.id IN (:ids)")
+	int postpone(@Param("ids") Collection<Long> ids, @Param("at") Timestamp at);
+}
@@ -0,0 +1,45 @@
+package com.example.rest.dao;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.rest.model.OutboxEmail;
+
+@Repository
+@Transactional(readOnly = true)
+public interface OutboxEmailRepository extends JpaRepository<OutboxEmail, Long> {
+
+	/**
+	 * Locks the next due emails. Rows locked by another instance are skipped
+	 * rather than waited for, so several dispatchers can drain the table.
+	 */
+	@Transactional
+	@Query(value = "SELECT * FROM outbox_email WHERE dead = false AND next_attempt <= :now "
+			+ "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+	List<OutboxEmail> lockDue(@Param("now") Timestamp now, @Param("limit") int limit);
+
+	@Modifying
+	@Transactional
+	@Query("UPDATE OutboxEmail o SET o.nextAttempt = (:until) WHERE o.id IN (:ids)")
+	int lease(@Param("ids") Collection<Long> ids, @Param("until") Timestamp until);
+
+	@Modifying
+	@Transactional
+	@Query("DELETE FROM OutboxEmail o WHERE o.id IN (:ids)")
+	int deleteSent(@Param("ids") Collection<Long> ids);
+
+	@Modifying
+	@Transactional
+	@Query("UPDATE OutboxEmail o SET o.attempts = o.attempts + 1, o.nextAttempt = (:next), "
+			+ "o.lastError = (:error), o.dead = (:dead) WHERE o.id = (:id)")
+	int markFailed(@Param("id") Long id, @Param("next") Timestamp next, @Param("error") String error,
+			@Param("dead") boolean dead);
+}
@@ -1,5 +1,8 @@
 package com.example.rest.dao;
 
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
@@ -15,33 +18,91 @@ import org.springframework.transaction.annotation.Transactional;
 
 import com.example.rest.model.Publication;
 import com.example.rest.model.User;
+import com.example.web.dto.response.PublicationDto;
 
 @Repository
 @Transactional(readOnly = true)
 public interface PublicationRepository extends JpaRepository<Publication, Long> {
+	
+	/**
+	 * Selects exactly what a PublicationDto needs, author included, so read paths
+	 * never hydrate Publication or User entities.
+	 */
+	String PUBLICATION_DTO = "SELECT new com.example.web.dto.response.PublicationDto("
+			+ "p.id, p.description, p.date, p.storageKey, p.likeCount, p.commentCount, "
+			+ "u.username, u.nom, u.prenom, u.avatarKey, u.has_avatar) ";
 
 	@Async
 	CompletableFuture<Optional<Publication>> findOneById(final Long id);
 	
+	@Query(PUBLICATION_DTO + "FROM Publication p JOIN p.utilisateur u WHERE p.id = (:id)")
+	Optional<PublicationDto> findDtoById(@Param("id") Long id);
+	
+	@Query(PUBLICATION_DTO + "FROM Publication p JOIN p.utilisateur u WHERE p.id IN (:ids) ORDER BY p.date DESC, p.id DESC")
+	List<PublicationDto> findDtosByIds(@Param("ids") Collection<Long> ids);
+	
+	@Query("SELECT p.storageKey FROM Publication p WHERE p.id = (:id)")
+	Optional<String> findStorageKeyById(@Param("id") Long id);
+	
+	@Query("SELECT p.storageKey FROM Publication p WHERE p.utilisateur.id = (:userId)")
+	List<String> findStorageKeysByUserId(@Param("userId") Long userId);
+	
 	@Async
-	CompletableFuture<Slice<Publication>> findAllByUtilisateurUsername(String username, Pageable paging);
+	@Query(PUBLICATION_DTO + "FROM Publication p JOIN p.utilisateur u WHERE u.username = (:username)")
+	CompletableFuture<Slice<PublicationDto>> findAllByUtilisateurUsername(@Param("username") String username, Pageable paging);
+	
+	@Async
+	@Query(PUBLICATION_DTO + "FROM Publication p JOIN p.utilisateur u WHERE u.username = (:username) "
+			+ "AND (p.date < (:date) OR (p.date = (:date) AND p.id < (:id))) "
+			+ "ORDER BY p.date DESC, p.id DESC")
+	CompletableFuture<Slice<PublicationDto>> findAllByUtilisateurUsernameBefore(@Param("username") String username,
+			@Param("date") Timestamp date, @Param("id") Long id, Pageable paging);
 	
 	@Async
 	@Query("SELECT p FROM Publication p JOIN FETCH p.comments WHERE p.id = (:id)")
     Publication findByIdAndFetchCommentsEagerly(@Param("id") Long id);
 	
-	@Async
-	@Query(value = "SELECT * from post p "
-			+ "INNER JOIN follower f on p.user_id=f.to_id "
-			+ "INNER JOIN utilisateur u on f.from_id=u.id "
-			+ "WHERE u.username=:username", nativeQuery=true)
-    CompletableFuture<Slice<Publication>> findNewPublications(@Param("username") String username, Pageable page);
+	@Query(PUBLICATION_DTO + "FROM Publication p JOIN p.utilisateur u WHERE u.timelinePull = true AND u.id IN "
+			+ "(SELECT f.to.id FROM Follower f WHERE f.from.id = (:userId)) "
+			+ "AND (p.date < (:date) OR (p.date = (:date) AND p.id < (:id))) "
+			+ "ORDER BY p.date DESC, p.id DESC")
+	List<PublicationDto> findPulledPublicationsBefore(@Param("userId") Long userId, @Param("date") Timestamp date,
+			@Param("id") Long id, Pageable page);
 	
 	@Async
 	CompletableFuture<Long> countByUtilisateur(User user);
 	
-	@Query("SELECT COUNT(p)>0 from Publication p WHERE p.photo like (%:name)")
-	boolean existsByFilepath(@Param("name") String filename);
+	@Modifying
+	@Transactional
+	@Query("UPDATE Publication p SET p.commentCount = p.commentCount + (:delta) WHERE p.id = (:id)")
+	int addToCommentCount(@Param("id") Long id, @Param("delta") int delta);
+	
+	@Modifying
+	@Transactional
+	@Query(value = "UPDATE post p INNER JOIN "
+			+ "(SELECT post_id, COUNT(*) AS n FROM postlikes WHERE user_id=:userId GROUP BY post_id) l ON p.id=l.post_id "
+			+ "SET p.like_count = p.like_count - l.n", nativeQuery = true)
+	int removeLikesOf(@Param("userId") Long userId);
+	
+	@Modifying
+	@Transactional
+	@Query(value = "UPDATE post p INNER JOIN "
+			+ "(SELECT post_id, COUNT(*) AS n FROM comment WHERE user_id=:userId GROUP BY post_id) c ON p.id=c.post_id "
+			+ "SET p.comment_count = p.comment_count - c.n", nativeQuery = true)
+	int removeCommentsOf(@Param("userId") Long userId);
+	
+	@Query("SELECT p.id FROM Publication p WHERE p.id > (:after) ORDER BY p.id")
+	List<Long> findIdsAfter(@Param("after") Long after, Pageable page);
+	
+	@Modifying
+	@Transactional
+	@Query(value = "UPDATE post p SET "
+			+ "p.like_count = (SELECT COUNT(*) FROM postlikes l WHERE l.post_id=p.id), "
+			+ "p.comment_count = (SELECT COUNT(*) FROM comment c WHERE c.post_id=p.id) "
+			+ "WHERE p.id BETWEEN :from AND :to "
+			+ "AND (p.like_count <> (SELECT COUNT(*) FROM postlikes l WHERE l.post_id=p.id) "
+			+ "OR p.comment_count <> (SELECT COUNT(*) FROM comment c WHERE c.post_id=p.id))", nativeQuery = true)
+	int reconcileCounters(@Param("from") Long from, @Param("to") Long to);
 	
 	@Modifying
 	@Transactional
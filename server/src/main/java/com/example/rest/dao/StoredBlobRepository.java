@@ -0,0 +1,53 @@
+package com.example.rest.dao;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import javax.persistence.LockModeType;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.rest.model.StoredBlob;
+
+@Repository
+@Transactional(readOnly = true)
+public interface StoredBlobRepository extends JpaRepository<StoredBlob, String> {
+
+	/**
+	 * Takes a reference on a blob, creating the row on the first one. The row
+	 * stays locked until the transaction ends, which keeps the collector from
+	 * deleting the file in between. Rows created before the type was recorded
+	 * get it from the next upload of the same bytes.
+	 */
+	@Modifying
+	@Transactional
+	@Query(value = "INSERT INTO stored_blob (path, ref_count, media_type) VALUES (:path, 1, :mediaType) "
+			+ "ON DUPLICATE KEY UPDATE ref_count = ref_count + 1, media_type = COALESCE(media_type, VALUES(media_type))",
+			nativeQuery = true)
+	void acquire(@Param("path") String path, @Param("mediaType") String mediaType);
+
+	@Modifying
+	@Transactional
+	@Query(value = "UPDATE stored_blob SET ref_count = GREATEST(ref_count - :count, 0) WHERE path IN (:paths)", nativeQuery = true)
+	int release(@Param("paths") Collection<String> paths, @Param("count") int count);
+
+	@Transactional
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("SELECT b FROM StoredBlob b WHERE b.path = (:path)")
+	Optional<StoredBlob> lock(@Param("path") String path);
+
+	@Query("SELECT b.path FROM StoredBlob b WHERE b.path LIKE CONCAT(:directory, '/%') AND b.path > (:after) "
+			+ "AND b.refCount > 0 ORDER BY b.path")
+	List<String> findReferencedAfter(@Param("directory") String directory, @Param("after") String after, Pageable page);
+
+	@Query("SELECT b.mediaType FROM StoredBlob b WHERE b.path = (:path)")
+	Optional<String> findMediaType(@Param("path") String path);
+}
@@ -0,0 +1,71 @@
+package com.example.rest.dao;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.rest.model.TimelineEntry;
+import com.example.web.dto.response.PublicationDto;
+
+@Repository
+@Transactional(readOnly = true)
+public interface TimelineRepository extends JpaRepository<TimelineEntry, Long> {
+
+	@Query(PublicationRepository.PUBLICATION_DTO
+			+ "FROM TimelineEntry t, Publication p JOIN p.utilisateur u WHERE t.postId = p.id AND t.userId = (:userId) "
+			+ "AND (t.date < (:date) OR (t.date = (:date) AND t.postId < (:id))) "
+			+ "ORDER BY t.date DESC, t.postId DESC")
+	List<PublicationDto> findTimelineBefore(@Param("userId") Long userId, @Param("date") Timestamp date,
+			@Param("id") Long id, Pageable page);
+
+	/**
+	 * One page of the merged timeline, pushed posts and posts of followed pull
+	 * authors, as post ids. Each source stops at the end of the page, only ids
+	 * and dates are read up to the offset.
+	 */
+	@Query(value = "SELECT m.id FROM ("
+			+ "(SELECT t.post_id AS id, t.date AS date FROM timeline t WHERE t.user_id=:userId "
+			+ "ORDER BY t.date DESC, t.post_id DESC LIMIT :window) "
+			+ "UNION "
+			+ "(SELECT p.id, p.date FROM post p INNER JOIN utilisateur a ON a.id=p.user_id "
+			+ "INNER JOIN follower f ON f.to_id=p.user_id WHERE f.from_id=:userId AND a.timeline_pull=true "
+			+ "ORDER BY p.date DESC, p.id DESC LIMIT :window)"
+			+ ") m ORDER BY m.date DESC, m.id DESC LIMIT :limit OFFSET :offset", nativeQuery = true)
+	List<Number> findTimelineIds(@Param("userId") Long userId, @Param("offset") int offset, @Param("limit") int limit,
+			@Param("window") int window);
+
+	@Modifying
+	@Transactional
+	@Query(value = "INSERT IGNORE INTO timeline (user_id, post_id, author_id, date) "
+			+ "SELECT f.from_id, :postId, :authorId, :date FROM follower f WHERE f.to_id=:authorId", nativeQuery = true)
+	int fanOut(@Param("postId") Long postId, @Param("authorId") Long authorId, @Param("date") Timestamp date);
+
+	@Modifying
+	@Transactional
+	@Query(value = "INSERT IGNORE INTO timeline (user_id, post_id, author_id, date) "
+			+ "SELECT :userId, p.id, p.user_id, p.date FROM post p INNER JOIN utilisateur a ON a.id=p.user_id "
+			+ "WHERE p.user_id=:authorId AND a.timeline_pull=false ORDER BY p.date DESC LIMIT :limit", nativeQuery = true)
+	int backfill(@Param("userId") Long userId, @Param("authorId") Long authorId, @Param("limit") int limit);
+
+	@Modifying
+	@Transactional
+	@Query("DELETE FROM TimelineEntry t WHERE t.userId = (:userId) AND t.authorId = (:authorId)")
+	int removeAuthor(@Param("userId") Long userId, @Param("authorId") Long authorId);
+
+	@Modifying
+	@Transactional
+	@Query("DELETE FROM TimelineEntry t WHERE t.postId = (:postId)")
+	int deleteByPostId(@Param("postId") Long postId);
+
+	@Modifying
+	@Transactional
+	@Query("DELETE FROM TimelineEntry t WHERE t.userId = (:userId) OR t.authorId = (:userId)")
+	int deleteByUser(@Param("userId") Long userId);
+}
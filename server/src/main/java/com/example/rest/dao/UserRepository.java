@@ -3,6 +3,7 @@ package com.example.rest.dao;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -11,6 +12,7 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.example.rest.model.User;
+import com.example.web.dto.response.UserDto;
 
 @Repository
 @Transactional(readOnly = true)
@@ -22,19 +24,33 @@ public interface UserRepository extends JpaRepository<User, Long> {
 	
 	@Modifying
 	@Transactional
-	@Query("UPDATE User u SET u.avatar=:path, u.has_avatar = 1 WHERE u=:user")
-    int setProfilePicture(User user, String path);
+	@Query("UPDATE User u SET u.avatarKey=:key, u.has_avatar = 1 WHERE u=:user")
+    int setProfilePicture(User user, String key);
 	
 	@Modifying
 	@Transactional
-	@Query("UPDATE User u SET u.avatar=DEFAULT, u.has_avatar = 0 WHERE u=:user")
+	@Query("UPDATE User u SET u.avatarKey=DEFAULT, u.has_avatar = 0 WHERE u=:user")
 	void resetProfilePicture(User user);
 	
-	@Query("SELECT u.avatar, u.has_avatar FROM User u WHERE u=:user")
+	@Modifying
+	@Transactional
+	@Query("UPDATE User u SET u.timelinePull = true WHERE u.id=:id")
+	void setTimelinePull(@Param("id") Long id);
+	
+	@Query("SELECT u.avatarKey, u.has_avatar FROM User u WHERE u=:user")
 	List<Object[]> getProfilePicture(User user);
 	
-	@Query("SELECT COUNT(u)>0 from User u WHERE u.avatar like %:avatar")
-	boolean existsByAvatar(@Param("avatar") String filename);
+	/** The profile header with its counters in one query, roles are not joined. */
+	@Query("SELECT new com.example.web.dto.response.UserDto(u.id, u.nom, u.prenom, u.username, u.avatarKey, u.has_avatar, "
+			+ "u.enabled, COALESCE(s.postCount, 0), COALESCE(s.followerCount, 0), COALESCE(s.followingCount, 0)) "
+			+ "FROM User u LEFT JOIN UserStats s ON s.userId = u.id WHERE u.username = (:username)")
+	Optional<UserDto> findProfileByUsername(@Param("username") String username);
+	
+	@Query("SELECT u.id FROM User u WHERE u.username = (:username)")
+	Optional<Long> findIdByUsername(@Param("username") String username);
+	
+	@Query("SELECT u.id FROM User u WHERE u.id > (:after) ORDER BY u.id")
+	List<Long> findIdsAfter(@Param("after") Long after, Pageable page);
 	
 	@Override
 	@Transactional
@@ -0,0 +1,61 @@
+package com.example.rest.dao;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.rest.model.UserStats;
+
+@Repository
+@Transactional(readOnly = true)
+public interface UserStatsRepository extends JpaRepository<UserStats, Long> {
+
+	/**
+	 * Adds the given deltas to the counters of a user, creating the row on the
+	 * first change. Counters never go below zero.
+	 */
+	@Modifying
+	@Transactional
+	@Query(value = "INSERT INTO user_stats (user_id, post_count, follower_count, following_count) "
+			+ "VALUES (:userId, GREATEST(:posts, 0), GREATEST(:followers, 0), GREATEST(:following, 0)) "
+			+ "ON DUPLICATE KEY UPDATE post_count = GREATEST(post_count + :posts, 0), "
+			+ "follower_count = GREATEST(follower_count + :followers, 0), "
+			+ "following_count = GREATEST(following_count + :following, 0)", nativeQuery = true)
+	void increment(@Param("userId") Long userId, @Param("posts") int posts,
+			@Param("followers") int followers, @Param("following") int following);
+	
+	/**
+	 * Takes the follows of a user who is about to be deleted off the counters of
+	 * the users on the other side.
+	 */
+	@Modifying
+	@Transactional
+	@Query(value = "UPDATE user_stats s JOIN follower f ON f.to_id = s.user_id "
+			+ "SET s.follower_count = GREATEST(s.follower_count - 1, 0) WHERE f.from_id = :userId", nativeQuery = true)
+	int removeFollowingOf(@Param("userId") Long userId);
+	
+	@Modifying
+	@Transactional
+	@Query(value = "UPDATE user_stats s JOIN follower f ON f.from_id = s.user_id "
+			+ "SET s.following_count = GREATEST(s.following_count - 1, 0) WHERE f.to_id = :userId", nativeQuery = true)
+	int removeFollowersOf(@Param("userId") Long userId);
+	
+	@Modifying
+	@Transactional
+	@Query(value = "INSERT INTO user_stats (user_id, post_count, follower_count, following_count) "
+			+ "SELECT u.id, "
+			+ "(SELECT COUNT(*) FROM post p WHERE p.user_id = u.id), "
+			+ "(SELECT COUNT(*) FROM follower f WHERE f.to_id = u.id), "
+			+ "(SELECT COUNT(*) FROM follower f WHERE f.from_id = u.id) "
+			+ "FROM utilisateur u WHERE u.id BETWEEN :from AND :to "
+			+ "ON DUPLICATE KEY UPDATE post_count = VALUES(post_count), "
+			+ "follower_count = VALUES(follower_count), following_count = VALUES(following_count)", nativeQuery = true)
+	int reconcile(@Param("from") Long from, @Param("to") Long to);
+	
+	@Modifying
+	@Transactional
+	void deleteByUserId(Long userId);
+}
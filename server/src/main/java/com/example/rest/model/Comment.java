@@ -7,18 +7,23 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.GenericGenerator;
 
 @Entity
+@Table(indexes = @Index(columnList = "post_id, date, id"))
 public class Comment implements Serializable {
 	
 	private static final long serialVersionUID = 8127543175542885029L;
 
 	@Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = SnowflakeIdGenerator.NAME)
+    @GenericGenerator(name = SnowflakeIdGenerator.NAME, strategy = "com.example.rest.model.SnowflakeIdGenerator")
 	private Long id;
 	
 	@Column(length=128)
@@ -26,7 +31,7 @@ public class Comment implements Serializable {
 	
 	private Timestamp date;
 	
-	@ManyToOne
+	@ManyToOne(fetch= FetchType.LAZY)
 	@JoinColumn(name = "user_id")
 	private User utilisateur;
 	
@@ -6,13 +6,14 @@ import java.sql.Timestamp;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 
+import org.hibernate.annotations.GenericGenerator;
+
 @Entity
 @Table(name="postlikes", uniqueConstraints= @UniqueConstraint(columnNames={"user_id", "post_id"}))
 public class Favori implements Serializable {
@@ -20,14 +21,15 @@ public class Favori implements Serializable {
 	private static final long serialVersionUID = -4538179406393643986L;
 
 	@Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = SnowflakeIdGenerator.NAME)
+    @GenericGenerator(name = SnowflakeIdGenerator.NAME, strategy = "com.example.rest.model.SnowflakeIdGenerator")
 	private Long id;
 	
 	@ManyToOne(fetch = FetchType.LAZY) // default = EAGER
 	@JoinColumn(name = "user_id")
 	private User utilisateur;
 	
-	@ManyToOne(optional=false)
+	@ManyToOne(fetch = FetchType.LAZY, optional=false)
 	@JoinColumn(name = "post_id")
 	private Publication post;
 	
@@ -3,27 +3,30 @@ package com.example.rest.model;
 import java.io.Serializable;
 
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import javax.persistence.UniqueConstraint;
 
+import org.hibernate.annotations.GenericGenerator;
+
 @Entity
 @Table(name="follower", uniqueConstraints= @UniqueConstraint(columnNames={"from_id", "to_id"}))
 public class Follower implements Serializable {
 	
 	@Id
-    @GeneratedValue(strategy=GenerationType.IDENTITY)
+    @GeneratedValue(generator = SnowflakeIdGenerator.NAME)
+    @GenericGenerator(name = SnowflakeIdGenerator.NAME, strategy = "com.example.rest.model.SnowflakeIdGenerator")
     private long id;
 	
-	@ManyToOne(optional=false)
+	@ManyToOne(fetch = FetchType.LAZY, optional=false)
 	@JoinColumn
     private User from;
 
-    @ManyToOne(optional=false)
+    @ManyToOne(fetch = FetchType.LAZY, optional=false)
     @JoinColumn
     private User to;
     
@@ -37,6 +40,14 @@ public class Follower implements Serializable {
 		this.to = to;
 	}
 
+	public long getId() {
+		return id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
 	public User getFrom() {
 		return from;
 	}
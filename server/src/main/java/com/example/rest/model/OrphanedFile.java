@@ -0,0 +1,79 @@
+package com.example.rest.model;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.GenericGenerator;
+
+/**
+ * An uploaded file that lost its last reference. Rows are written when a
+ * publication is deleted or an avatar replaced, and removed by the storage
+ * collector once the file is gone.
+ */
+@Entity
+@Table(name = "orphaned_file", indexes = @Index(columnList = "orphaned_at, id"))
+public class OrphanedFile implements Serializable {
+
+	private static final long serialVersionUID = -3356201942287761204L;
+
+	@Id
+	@GeneratedValue(generator = SnowflakeIdGenerator.NAME)
+	@GenericGenerator(name = SnowflakeIdGenerator.NAME, strategy = "com.example.rest.model.SnowflakeIdGenerator")
+	private Long id;
+
+	@Column(nullable = false, length = 16)
+	private String directory;
+
+	@Column(name = "storage_key", nullable = false, length = 64)
+	private String storageKey;
+
+	@Column(name = "orphaned_at", nullable = false)
+	private Timestamp orphanedAt;
+
+	public OrphanedFile() {}
+
+	public OrphanedFile(String directory, String storageKey, Timestamp orphanedAt) {
+		this.directory = directory;
+		this.storageKey = storageKey;
+		this.orphanedAt = orphanedAt;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getDirectory() {
+		return directory;
+	}
+
+	public void setDirectory(String directory) {
+		this.directory = directory;
+	}
+
+	public String getStorageKey() {
+		return storageKey;
+	}
+
+	public void setStorageKey(String storageKey) {
+		this.storageKey = storageKey;
+	}
+
+	public Timestamp getOrphanedAt() {
+		return orphanedAt;
+	}
+
+	public void setOrphanedAt(Timestamp orphanedAt) {
+		this.orphanedAt = orphanedAt;
+	}
+}
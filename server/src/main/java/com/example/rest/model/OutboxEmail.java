@@ -0,0 +1,128 @@
+package com.example.rest.model;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.GenericGenerator;
+
+/**
+ * An email waiting to be sent. Rows are written in the transaction that
+ * creates the token the email refers to, and deleted once the SMTP server
+ * has accepted the message.
+ */
+@Entity
+@Table(name = "outbox_email", indexes = @Index(columnList = "dead, next_attempt, id"))
+public class OutboxEmail implements Serializable {
+
+	private static final long serialVersionUID = 6518290017832452375L;
+
+	@Id
+	@GeneratedValue(generator = SnowflakeIdGenerator.NAME)
+	@GenericGenerator(name = SnowflakeIdGenerator.NAME, strategy = "com.example.rest.model.SnowflakeIdGenerator")
+	private Long id;
+
+	@Column(nullable = false)
+	private String sender;
+
+	@Column(nullable = false, length = 128)
+	private String recipient;
+
+	@Column(nullable = false)
+	private String subject;
+
+	@Column(nullable = false, columnDefinition = "text")
+	private String body;
+
+	@Column(name = "next_attempt", nullable = false)
+	private Timestamp nextAttempt;
+
+	@Column(columnDefinition = "int default 0", nullable = false)
+	private int attempts;
+
+	@Column(name = "last_error", length = 512)
+	private String lastError;
+
+	@Column(columnDefinition = "boolean default false", nullable = false)
+	private boolean dead;
+
+	public OutboxEmail() {}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getSender() {
+		return sender;
+	}
+
+	public void setSender(String sender) {
+		this.sender = sender;
+	}
+
+	public String getRecipient() {
+		return recipient;
+	}
+
+	public void setRecipient(String recipient) {
+		this.recipient = recipient;
+	}
+
+	public String getSubject() {
+		return subject;
+	}
+
+	public void setSubject(String subject) {
+		this.subject = subject;
+	}
+
+	public String getBody() {
+		return body;
+	}
+
+	public void setBody(String body) {
+		this.body = body;
+	}
+
+	public Timestamp getNextAttempt() {
+		return nextAttempt;
+	}
+
+	public void setNextAttempt(Timestamp nextAttempt) {
+		this.nextAttempt = nextAttempt;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	public String getLastError() {
+		return lastError;
+	}
+
+	public void setLastError(String lastError) {
+		this.lastError = lastError;
+	}
+
+	public boolean isDead() {
+		return dead;
+	}
+
+	public void setDead(boolean dead) {
+		this.dead = dead;
+	}
+}
@@ -11,19 +11,22 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.GenericGenerator;
+
 @Entity
-@Table(name= "post")
+@Table(name= "post", indexes = { @Index(columnList = "user_id, date, id"), @Index(columnList = "storage_key") })
 public class Publication implements Serializable {
 
 	@Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(generator = SnowflakeIdGenerator.NAME)
+    @GenericGenerator(name = SnowflakeIdGenerator.NAME, strategy = "com.example.rest.model.SnowflakeIdGenerator")
     private Long id;
 	
 	@Column(length=1024)
@@ -32,10 +35,16 @@ public class Publication implements Serializable {
 	@Column
 	private Timestamp date;
 
-	@Column
-	private String photo;
+	@Column(name = "storage_key", length = 64)
+	private String storageKey;
+	
+	@Column(name = "like_count", columnDefinition="int default 0", nullable=false)
+	private int likeCount;
 	
-	@ManyToOne(optional=false)
+	@Column(name = "comment_count", columnDefinition="int default 0", nullable=false)
+	private int commentCount;
+	
+	@ManyToOne(fetch = FetchType.LAZY, optional=false)
 	@JoinColumn(name = "user_id")
 	private User utilisateur;
 	
@@ -47,12 +56,12 @@ public class Publication implements Serializable {
 	
 	public Publication() {}
 
-	public Publication(Long id, String description, Timestamp date, String photo, User utilisateur) {
+	public Publication(Long id, String description, Timestamp date, String storageKey, User utilisateur) {
 		super();
 		this.id = id;
 		this.description = description;
 		this.date = date;
-		this.photo = photo;
+		this.storageKey = storageKey;
 		this.utilisateur = utilisateur;
 	}
 
@@ -72,12 +81,12 @@ public class Publication implements Serializable {
 		this.description = description;
 	}
 
-	public String getPhoto() {
-		return photo;
+	public String getStorageKey() {
+		return storageKey;
 	}
 
-	public void setPhoto(String photo) {
-		this.photo = photo;
+	public void setStorageKey(String storageKey) {
+		this.storageKey = storageKey;
 	}
 
 	public User getUtilisateur() {
@@ -96,6 +105,22 @@ public class Publication implements Serializable {
 		this.date = date;
 	}
 
+	public int getLikeCount() {
+		return likeCount;
+	}
+
+	public void setLikeCount(int likeCount) {
+		this.likeCount = likeCount;
+	}
+
+	public int getCommentCount() {
+		return commentCount;
+	}
+
+	public void setCommentCount(int commentCount) {
+		this.commentCount = commentCount;
+	}
+
 	public List<Comment> getComments() {
 		return comments;
 	}
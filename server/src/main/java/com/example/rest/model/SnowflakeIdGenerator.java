@@ -0,0 +1,85 @@
+package com.example.rest.model;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ * Time ordered ids generated in memory, so inserts need no round trip to the
+ * database and can be batched. An id is made of 41 bits of milliseconds since
+ * 2021-01-01, 5 bits of node id and 6 bits of sequence: 52 bits in total, so
+ * ids stay exact as JavaScript numbers. Each node can issue 64 ids per
+ * millisecond. The node id is read from the {@code app.id.node-id} JPA
+ * property and must be unique among the instances sharing the database.
+ */
+public class SnowflakeIdGenerator implements IdentifierGenerator, Configurable {
+
+	public static final String NAME = "snowflake";
+	public static final String NODE_ID = "app.id.node-id";
+
+	private static final long EPOCH = 1609459200000L;
+	private static final int NODE_BITS = 5;
+	private static final int SEQUENCE_BITS = 6;
+	private static final long MAX_NODE = (1L << NODE_BITS) - 1;
+	private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+	private static final long MAX_BACKWARD_MS = 5000;
+
+	private static volatile long node;
+	private static long lastTimestamp = -1L;
+	private static long sequence;
+
+	@Override
+	public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+		var value = serviceRegistry.getService(ConfigurationService.class).getSettings().get(NODE_ID);
+
+		if (value != null) {
+			var id = Long.parseLong(value.toString().trim());
+			if (id < 0 || id > MAX_NODE) {
+				throw new MappingException(NODE_ID + " must be between 0 and " + MAX_NODE + ", got " + id);
+			}
+			node = id;
+		}
+	}
+
+	@Override
+	public Serializable generate(SharedSessionContractImplementor session, Object object) {
+		return nextId();
+	}
+
+	/**
+	 * Also used by the statements that insert rows without going through
+	 * Hibernate.
+	 */
+	public static synchronized long nextId() {
+		var timestamp = System.currentTimeMillis();
+
+		if (timestamp < lastTimestamp) {
+			if (lastTimestamp - timestamp > MAX_BACKWARD_MS) {
+				throw new IllegalStateException("Clock moved backwards by " + (lastTimestamp - timestamp) + " ms");
+			}
+			timestamp = lastTimestamp;
+		}
+
+		if (timestamp == lastTimestamp) {
+			sequence = (sequence + 1) & SEQUENCE_MASK;
+			if (sequence == 0) {
+				timestamp = lastTimestamp + 1;
+				while (System.currentTimeMillis() < timestamp) {
+					Thread.onSpinWait();
+				}
+			}
+		} else {
+			sequence = 0;
+		}
+		lastTimestamp = timestamp;
+
+		return ((timestamp - EPOCH) << (NODE_BITS + SEQUENCE_BITS)) | (node << SEQUENCE_BITS) | sequence;
+	}
+}
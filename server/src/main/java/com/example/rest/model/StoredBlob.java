@@ -0,0 +1,62 @@
+package com.example.rest.model;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * An uploaded file, keyed by its upload directory and content-derived storage
+ * key, with the number of posts or users referencing it. Identical uploads
+ * share one file; it is collected once the count drops to zero. The media
+ * type is the one read from the image header on upload, files are served
+ * with it.
+ */
+@Entity
+@Table(name = "stored_blob")
+public class StoredBlob implements Serializable {
+
+	private static final long serialVersionUID = 6254018911537246395L;
+
+	@Id
+	@Column(length = 80)
+	private String path;
+
+	@Column(name = "ref_count", columnDefinition = "int default 0", nullable = false)
+	private int refCount;
+
+	@Column(name = "media_type", length = 16)
+	private String mediaType;
+
+	public StoredBlob() {}
+
+	public static String path(String directory, String storageKey) {
+		return directory + '/' + storageKey;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public void setPath(String path) {
+		this.path = path;
+	}
+
+	public int getRefCount() {
+		return refCount;
+	}
+
+	public void setRefCount(int refCount) {
+		this.refCount = refCount;
+	}
+
+	public String getMediaType() {
+		return mediaType;
+	}
+
+	public void setMediaType(String mediaType) {
+		this.mediaType = mediaType;
+	}
+}
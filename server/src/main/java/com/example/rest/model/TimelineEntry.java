@@ -0,0 +1,119 @@
+package com.example.rest.model;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * One post in the materialized home timeline of a user. Rows only hold ids so
+ * the fan-out can be written with a single INSERT ... SELECT; posts that have
+ * been deleted simply stop joining.
+ */
+@Entity
+@Table(name = "timeline",
+		uniqueConstraints = @UniqueConstraint(columnNames = {"user_id", "post_id"}),
+		indexes = {
+				@Index(columnList = "user_id, date, post_id"),
+				@Index(columnList = "user_id, author_id"),
+				@Index(columnList = "post_id") })
+public class TimelineEntry implements Serializable {
+
+	private static final long serialVersionUID = 2306845361718411735L;
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	private Long id;
+
+	@Column(name = "user_id", nullable = false)
+	private Long userId;
+
+	@Column(name = "post_id", nullable = false)
+	private Long postId;
+
+	@Column(name = "author_id", nullable = false)
+	private Long authorId;
+
+	@Column(nullable = false)
+	private Timestamp date;
+
+	public TimelineEntry() {}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public Long getUserId() {
+		return userId;
+	}
+
+	public void setUserId(Long userId) {
+		this.userId = userId;
+	}
+
+	public Long getPostId() {
+		return postId;
+	}
+
+	public void setPostId(Long postId) {
+		this.postId = postId;
+	}
+
+	public Long getAuthorId() {
+		return authorId;
+	}
+
+	public void setAuthorId(Long authorId) {
+		this.authorId = authorId;
+	}
+
+	public Timestamp getDate() {
+		return date;
+	}
+
+	public void setDate(Timestamp date) {
+		this.date = date;
+	}
+
+	@Override
+	public int hashCode() {
+		var prime = 31;
+		var result = 1;
+		result = prime * result + ((postId == null) ? 0 : postId.hashCode());
+		result = prime * result + ((userId == null) ? 0 : userId.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		TimelineEntry other = (TimelineEntry) obj;
+		if (postId == null) {
+			if (other.postId != null)
+				return false;
+		} else if (!postId.equals(other.postId))
+			return false;
+		if (userId == null) {
+			if (other.userId != null)
+				return false;
+		} else if (!userId.equals(other.userId))
+			return false;
+		return true;
+	}
+}
@@ -13,8 +13,8 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
 import javax.persistence.OneToMany;
@@ -22,6 +22,7 @@ import javax.persistence.OneToOne;
 import javax.persistence.JoinColumn;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.LazyCollection;
 import org.hibernate.annotations.LazyCollectionOption;
 import org.springframework.security.core.GrantedAuthority;
@@ -31,11 +32,14 @@ import org.springframework.security.core.userdetails.UserDetails;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 @Entity
-@Table(name = "utilisateur")
+@Table(name = "utilisateur", indexes = @Index(columnList = "avatar_key"))
 public class User implements Serializable, UserDetails {
 
+	public static final String DEFAULT_AVATAR = "default.jpeg";
+
 	@Id
-	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@GeneratedValue(generator = SnowflakeIdGenerator.NAME)
+	@GenericGenerator(name = SnowflakeIdGenerator.NAME, strategy = "com.example.rest.model.SnowflakeIdGenerator")
 	@Column(unique = true, nullable = false)
     private Long id;
 
@@ -54,14 +58,18 @@ public class User implements Serializable, UserDetails {
 	@Column(length = 60)
 	private String password;
     
-    @Column(columnDefinition="varchar(255) default 'http://localhost:8081/api/user/profile_picture/default.jpeg'", nullable=false)
-    private String avatar;
+    @Column(name="avatar_key", columnDefinition="varchar(64) default 'default.jpeg'", nullable=false)
+    private String avatarKey = DEFAULT_AVATAR;
     
     @Column(columnDefinition="boolean default false")
     private boolean has_avatar;
 	
 	@Column(columnDefinition="boolean default false")
     private boolean enabled;
+	
+	@JsonIgnore
+	@Column(name="timeline_pull", columnDefinition="boolean default false", nullable=false)
+    private boolean timelinePull;
 
     @ManyToMany(cascade=CascadeType.ALL, fetch = FetchType.EAGER)
     @JoinTable(name = "utilisateur_roles", 
@@ -168,12 +176,12 @@ public class User implements Serializable, UserDetails {
 		this.posts = posts;
 	}
 
-	public String getAvatar() {
-		return avatar;
+	public String getAvatarKey() {
+		return avatarKey;
 	}
 
-	public void setAvatar(String avatar) {
-		this.avatar = avatar;
+	public void setAvatarKey(String avatarKey) {
+		this.avatarKey = avatarKey;
 	}
 
 	public List<Comment> getComments() {
@@ -216,6 +224,14 @@ public class User implements Serializable, UserDetails {
 		this.has_avatar = has_avatar;
 	}
 
+	public boolean isTimelinePull() {
+		return timelinePull;
+	}
+
+	public void setTimelinePull(boolean timelinePull) {
+		this.timelinePull = timelinePull;
+	}
+
 	public VerificationToken getToken() {
 		return token;
 	}
@@ -0,0 +1,67 @@
+package com.example.rest.model;
+
+import java.io.Serializable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Profile counters of a user, keyed by the user id. Kept up to date by the
+ * services that create or delete posts and follows, and repaired nightly by
+ * the counter reconciliation task.
+ */
+@Entity
+@Table(name = "user_stats")
+public class UserStats implements Serializable {
+
+	private static final long serialVersionUID = -4781307256425786931L;
+
+	@Id
+	@Column(name = "user_id")
+	private Long userId;
+
+	@Column(name = "post_count", columnDefinition = "int default 0", nullable = false)
+	private int postCount;
+
+	@Column(name = "follower_count", columnDefinition = "int default 0", nullable = false)
+	private int followerCount;
+
+	@Column(name = "following_count", columnDefinition = "int default 0", nullable = false)
+	private int followingCount;
+
+	public UserStats() {}
+
+	public Long getUserId() {
+		return userId;
+	}
+
+	public void setUserId(Long userId) {
+		this.userId = userId;
+	}
+
+	public int getPostCount() {
+		return postCount;
+	}
+
+	public void setPostCount(int postCount) {
+		this.postCount = postCount;
+	}
+
+	public int getFollowerCount() {
+		return followerCount;
+	}
+
+	public void setFollowerCount(int followerCount) {
+		this.followerCount = followerCount;
+	}
+
+	public int getFollowingCount() {
+		return followingCount;
+	}
+
+	public void setFollowingCount(int followingCount) {
+		this.followingCount = followingCount;
+	}
+}
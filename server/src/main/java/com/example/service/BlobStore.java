@@ -0,0 +1,52 @@
+package com.example.service;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Optional;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * Where uploaded files live. Keys are relative paths such as
+ * {@code photos/ab/cd/abcd...jpg}; the backend is picked with
+ * {@code app.storage.type}.
+ */
+public interface BlobStore {
+
+	@FunctionalInterface
+	interface Visitor {
+		void visit(String key, long lastModified) throws IOException;
+	}
+
+	/** A local file to stage an upload in before it is {@link #put put}. */
+	Path createTempFile() throws IOException;
+
+	/**
+	 * Stores the file under the key, replacing what was there. The file is
+	 * consumed. Stores that clients download from directly keep the media type
+	 * with the file.
+	 */
+	void put(String key, Path file, String mediaType) throws IOException;
+
+	boolean exists(String key) throws IOException;
+
+	/** @throws java.io.FileNotFoundException when there is nothing under the key */
+	Resource load(String key) throws IOException;
+
+	/**
+	 * A time-limited URL the client can download the file from, empty when
+	 * the file is served by the application.
+	 */
+	Optional<URI> presign(String key);
+
+	void delete(String key) throws IOException;
+
+	/** Visits every key below the prefix. */
+	void list(String prefix, Visitor visitor) throws IOException;
+
+	/** Moves files left in a former layout, up to the limit. Returns how many moved. */
+	default int migrateLayout(String directory, int limit) throws IOException {
+		return 0;
+	}
+}
@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 import com.example.rest.model.Comment;
+import com.example.web.dto.Cursor;
 import com.example.web.dto.request.CommentReqDto;
 import com.example.web.dto.response.CommentResDto;
 
@@ -14,4 +15,6 @@ public interface CommentService {
 	void deleteComment(Long id);
 
 	CompletableFuture<List<CommentResDto>> listComments(Long id, int pageNo, int pageSize, String sortBy);
+
+	CompletableFuture<List<CommentResDto>> listComments(Long id, Cursor after, int pageSize);
 }
@@ -1,11 +1,11 @@
 package com.example.service;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
-import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.example.web.dto.response.AvatarResponse;
@@ -13,17 +13,37 @@ import com.example.web.exception.IncorrectFileExtensionException;
 
 public interface FileStorageService {
 
+	String PHOTOS = "photos";
+
+	String AVATARS = "avatars";
+
 	void init() throws IOException;
 	
 	void save(MultipartFile file, String description) throws IncorrectFileExtensionException, IOException;
 
+	void save(InputStream body, long length, String description) throws IncorrectFileExtensionException, IOException;
+
 	CompletableFuture<AvatarResponse> saveAvatar(MultipartFile file) throws IncorrectFileExtensionException, IOException;
 
-	Resource loadAvatar(String filename) throws MalformedURLException, FileNotFoundException;
+	CompletableFuture<AvatarResponse> saveAvatar(InputStream body, long length) throws IncorrectFileExtensionException, IOException;
+
+	Media loadAvatar(String filename, Integer size) throws IOException;
+
+	Media loadPhoto(String filename, Integer size) throws IOException;
 
-	Resource loadPhoto(String filename) throws MalformedURLException, FileNotFoundException;
+	String avatarMediaType(String filename);
+
+	String photoMediaType(String filename);
+
+	Optional<URI> avatarRedirect(String filename, Integer size) throws IOException;
+
+	Optional<URI> photoRedirect(String filename, Integer size) throws IOException;
 
 	void deleteUnusedPhotos() throws IOException;
 
 	void deleteUnusedAvatars() throws IOException;
+
+	int migrateLayout(int limit) throws IOException;
+
+	void delete(String directory, String key) throws IOException;
 }
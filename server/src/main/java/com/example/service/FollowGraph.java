@@ -0,0 +1,20 @@
+package com.example.service;
+
+public interface FollowGraph {
+
+	boolean isFollowed(long from, long to);
+
+	int followerCount(long userId);
+
+	int followingCount(long userId);
+
+	long[] followingInCommon(long user1, long user2);
+
+	long[] followersInCommon(long user1, long user2);
+
+	void follow(long from, long to);
+
+	void unfollow(long from, long to);
+
+	void removeUser(long userId);
+}
@@ -0,0 +1,14 @@
+package com.example.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public interface ImageVariantService {
+
+	CompletableFuture<Void> generateVariants(String original);
+
+	String resolve(String original, Integer size) throws IOException;
+
+	List<String> variants(String original);
+}
@@ -0,0 +1,10 @@
+package com.example.service;
+
+import org.springframework.mail.SimpleMailMessage;
+
+public interface MailOutbox {
+
+	void enqueue(SimpleMailMessage message);
+
+	int dispatch();
+}
@@ -0,0 +1,28 @@
+package com.example.service;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * An uploaded image as it is served. A resized copy that does not exist, not
+ * yet or not at all, is answered with the original, which is then not exact:
+ * it may change under the same URL and must not be cached for good.
+ */
+public final class Media {
+
+	private final Resource resource;
+	private final boolean exact;
+
+	public Media(Resource resource, boolean exact) {
+		this.resource = resource;
+		this.exact = exact;
+	}
+
+	public Resource getResource() {
+		return resource;
+	}
+
+	/** Whether the file served is the size that was asked for. */
+	public boolean isExact() {
+		return exact;
+	}
+}
@@ -4,6 +4,7 @@ import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 import com.example.rest.model.Publication;
+import com.example.web.dto.Cursor;
 import com.example.web.dto.response.PublicationDto;
 
 public interface PublicationService {
@@ -24,4 +25,10 @@ public interface PublicationService {
 
 	CompletableFuture<List<PublicationDto>> getNewPublications(Integer pageNo, Integer pageSize);
 
+	CompletableFuture<List<PublicationDto>> getFavorites(Cursor after, Integer pageSize);
+
+	CompletableFuture<List<PublicationDto>> getUserPublications(String username, Cursor after, Integer pageSize);
+
+	CompletableFuture<List<PublicationDto>> getNewPublications(Cursor after, Integer pageSize);
+
 }
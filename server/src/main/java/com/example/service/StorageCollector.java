@@ -0,0 +1,14 @@
+package com.example.service;
+
+import java.util.Collection;
+
+public interface StorageCollector {
+
+	void acquire(String directory, String key, String mediaType);
+
+	void release(String directory, Collection<String> keys);
+
+	void orphaned(String directory, Collection<String> keys);
+
+	int collect();
+}
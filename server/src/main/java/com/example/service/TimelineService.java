@@ -0,0 +1,25 @@
+package com.example.service;
+
+import org.springframework.data.domain.Slice;
+
+import com.example.rest.model.Publication;
+import com.example.rest.model.User;
+import com.example.web.dto.Cursor;
+import com.example.web.dto.response.PublicationDto;
+
+public interface TimelineService {
+
+	void fanOut(Publication publication);
+
+	void backfill(Long userId, Long authorId);
+
+	void removeAuthor(Long userId, Long authorId);
+
+	void removePublication(Long id);
+
+	void removeUser(User user);
+
+	Slice<PublicationDto> getTimeline(User user, int pageNo, int pageSize);
+
+	Slice<PublicationDto> getTimeline(User user, Cursor after, int pageSize);
+}
@@ -5,6 +5,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 import com.example.rest.model.User;
+import com.example.web.dto.Cursor;
 import com.example.web.dto.response.AvatarResponse;
 import com.example.web.dto.response.UserDto;
 
@@ -16,7 +17,7 @@ public interface UserService {
 
 	void unfollow(String username);
 
-	CompletableFuture<AvatarResponse> setProfilePicture(String path);
+	AvatarResponse setProfilePicture(String path);
 	
 	CompletableFuture<List<UserDto>> getSubscriptions(String username, int pageNo, int pageSize) throws InterruptedException;
 
@@ -26,6 +27,10 @@ public interface UserService {
 
 	CompletableFuture<List<UserDto>> getSubscribers(String username, int pageNo, int pageSize);
 
+	CompletableFuture<List<UserDto>> getSubscriptions(String username, Cursor after, int pageSize);
+
+	CompletableFuture<List<UserDto>> getSubscribers(String username, Cursor after, int pageSize);
+
 	boolean isAnonymous();
 
 	User getAuthenticatedUser();
@@ -0,0 +1,14 @@
+package com.example.service;
+
+public interface WriteCoalescer {
+
+	void like(long userId, long postId);
+
+	void dislike(long userId, long postId);
+
+	void follow(long from, long to);
+
+	void unfollow(long from, long to);
+
+	void flush();
+}
@@ -17,15 +17,22 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.example.jwt.JwtUtils;
+import com.example.jwt.PrincipalCache;
 import com.example.jwt.response.JwtResponse;
 import com.example.rest.dao.PasswordResetTokenRepository;
+import com.example.rest.dao.PublicationRepository;
 import com.example.rest.dao.RoleRepository;
 import com.example.rest.dao.UserRepository;
+import com.example.rest.dao.UserStatsRepository;
 import com.example.rest.dao.VerificationTokenRepository;
 import com.example.rest.model.PasswordResetToken;
 import com.example.rest.model.User;
 import com.example.rest.model.VerificationToken;
 import com.example.service.AuthService;
+import com.example.service.FileStorageService;
+import com.example.service.FollowGraph;
+import com.example.service.StorageCollector;
+import com.example.service.TimelineService;
 import com.example.web.dto.request.LoginDto;
 import com.example.web.dto.request.NewPasswordDto;
 import com.example.web.dto.request.SignupDto;
@@ -52,6 +59,21 @@ public class AuthServiceImpl implements AuthService {
 	
     @Autowired
     private PasswordResetTokenRepository passwordResetRepository;
+    
+    @Autowired
+    private PublicationRepository publicationRepository;
+    
+    @Autowired
+    private TimelineService timelineService;
+    
+    @Autowired
+    private UserStatsRepository userStatsRepository;
+    
+    @Autowired
+    private FollowGraph followGraph;
+    
+    @Autowired
+    private PrincipalCache principalCache;
 	
 	@Autowired
 	private AuthenticationManager authenticationManager;
@@ -64,6 +86,9 @@ public class AuthServiceImpl implements AuthService {
     
     @Autowired
     private SessionRegistry sessionRegistry;
+    
+    @Autowired
+    private StorageCollector storageCollector;
 
 	@Override
     public User registerUser(final SignupDto signupDto) {
@@ -115,6 +140,7 @@ public class AuthServiceImpl implements AuthService {
 	@Override
 	public void saveRegisteredUser(final User user) {
 		userRepository.save(user);
+		principalCache.invalidate(user.getEmail());
 	}
 
 	@Override
@@ -131,7 +157,18 @@ public class AuthServiceImpl implements AuthService {
         	passwordResetRepository.delete(passwordToken);
         }
 
+        timelineService.removeUser(user);
+        userStatsRepository.removeFollowingOf(user.getId());
+        userStatsRepository.removeFollowersOf(user.getId());
+        userStatsRepository.deleteByUserId(user.getId());
+        followGraph.removeUser(user.getId());
+        publicationRepository.removeLikesOf(user.getId());
+        publicationRepository.removeCommentsOf(user.getId());
+        var photos = publicationRepository.findStorageKeysByUserId(user.getId());
         userRepository.delete(user);
+        storageCollector.release(FileStorageService.PHOTOS, photos);
+        storageCollector.release(FileStorageService.AVATARS, List.of(user.getAvatarKey()));
+        principalCache.invalidate(user.getEmail());
 	}
 
 	@Override
@@ -178,6 +215,7 @@ public class AuthServiceImpl implements AuthService {
 	public void changeUserPassword(User user, String password) {
 		user.setPassword(passwordEncoder.encode(password));
         userRepository.save(user);
+        principalCache.invalidate(user.getEmail());
 	}
 
 	@Override
@@ -203,6 +241,7 @@ public class AuthServiceImpl implements AuthService {
 
         user.setEnabled(true);
         userRepository.save(user);
+        principalCache.invalidate(user.getEmail());
         return TOKEN_VALID;
 	}
 	
@@ -232,6 +271,7 @@ public class AuthServiceImpl implements AuthService {
 		var user = token.getUser();
 		user.setPassword(passwordEncoder.encode(dto.getPasswordRepeat()));
 		userRepository.save(user);
+		principalCache.invalidate(user.getEmail());
 		passwordResetRepository.delete(token);	
 	}
 
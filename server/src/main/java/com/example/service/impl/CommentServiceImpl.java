@@ -20,11 +20,11 @@ import com.example.rest.model.Comment;
 import com.example.rest.model.Publication;
 import com.example.service.CommentService;
 import com.example.service.UserService;
+import com.example.web.dto.Cursor;
 import com.example.web.dto.request.CommentReqDto;
 import com.example.web.dto.response.CommentResDto;
 import com.example.web.exception.EntityNotFoundException;
 import com.example.web.exception.HttpUnauthorizedException;
-import com.example.web.mappers.MapstructMapper;
 
 @Service
 @Transactional
@@ -40,38 +40,49 @@ public class CommentServiceImpl implements CommentService {
 	@Autowired
 	private UserService userService;
 	
-	@Autowired
-	private MapstructMapper mapper;
-	
 	
 	@Override
 	@Async
 	public CompletableFuture<List<CommentResDto>> listComments (Long id, int pageNo, int pageSize, String sortBy) {
 		
 		Pageable paging = PageRequest.of(pageNo, pageSize, Sort.by(sortBy).descending());
-		Slice<Comment> slicedResult = commentRepository.findAllByPostId(id, paging);
+		Slice<CommentResDto> slicedResult = commentRepository.findAllByPostId(id, paging);
 		List<CommentResDto> list = new ArrayList<>();
 		
 		if (slicedResult.hasContent()) {
-			list = mapper.commListMap(slicedResult.getContent());
+			list = slicedResult.getContent();
 		}
 		return CompletableFuture.completedFuture(list);
 		
 	}
 	
+	@Override
+	@Async
+	public CompletableFuture<List<CommentResDto>> listComments(Long id, Cursor after, int pageSize) {
+		
+		Slice<CommentResDto> slicedResult = commentRepository.findAllByPostIdBefore(id, after.getDate(), after.getId(), PageRequest.of(0, pageSize));
+		List<CommentResDto> list = new ArrayList<>();
+		
+		if (slicedResult.hasContent()) {
+			list = slicedResult.getContent();
+		}
+		return CompletableFuture.completedFuture(list);
+	}
+	
 	@Override
 	public Comment addComment(final CommentReqDto comment) {
 
-		var post = publicationRepository.findById(comment.getPost_id());
-		if (post.isPresent()) {
+		if (publicationRepository.existsById(comment.getPost_id())) {
 			
 			var comm = new Comment();
 			comm.setUtilisateur(userService.getAuthenticatedUser());
 			comm.setText(comment.getComment());
 			comm.setDate(new Timestamp(System.currentTimeMillis()));
-			comm.setPost(post.get());
+			comm.setPost(publicationRepository.getById(comment.getPost_id()));
 			
-			return commentRepository.save(comm);
+			var saved = commentRepository.save(comm);
+			publicationRepository.addToCommentCount(comment.getPost_id(), 1);
+			return saved;
 		} 
 		else {
 			throw new EntityNotFoundException(Publication.class, "id", comment.getPost_id().toString());
@@ -80,10 +91,14 @@ public class CommentServiceImpl implements CommentService {
 	
 	@Override
 	public void deleteComment(Long id) {
-		var username = userService.getAuthenticatedUser().getUsername();	
-				if (commentRepository.delete(id, username) == 0) {
-				throw new HttpUnauthorizedException("The comment does not exist or you do not have the permission to access it");
+		var username = userService.getAuthenticatedUser().getUsername();
+		var postId = commentRepository.findPostIdById(id);
+		int rows = commentRepository.delete(id, username);
+		
+		if (rows == 0) {
+			throw new HttpUnauthorizedException("The comment does not exist or you do not have the permission to access it");
 		}
+		publicationRepository.addToCommentCount(postId.get(), -rows);
 	}
 
 }
@@ -1,48 +1,67 @@
 package com.example.service.impl;
 
-import java.io.FileNotFoundException;
+import java.io.EOFException;
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
-import java.util.Arrays;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
 
-import org.apache.commons.io.FilenameUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
 import org.springframework.web.multipart.MultipartFile;
 
-import com.example.rest.dao.PublicationRepository;
-import com.example.rest.dao.UserRepository;
+import com.example.rest.dao.StoredBlobRepository;
+import com.example.rest.model.StoredBlob;
+import com.example.rest.model.User;
+import com.example.service.BlobStore;
 import com.example.service.FileStorageService;
+import com.example.service.ImageVariantService;
+import com.example.service.Media;
 import com.example.service.PublicationService;
+import com.example.service.StorageCollector;
 import com.example.service.UserService;
 import com.example.web.dto.response.AvatarResponse;
+import com.example.web.exception.ImageTooLargeException;
 import com.example.web.exception.IncorrectFileExtensionException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 
 @Service
 @Transactional
 public class FileStorageServiceImpl implements FileStorageService {
 
 	private static final Logger logger = LoggerFactory.getLogger(FileStorageServiceImpl.class);
-	private static final List<String> contentTypes = Arrays.asList("image/png", "image/jpeg", "image/webp", "image/bmp", "image/jpg");
-	private static final Path uploads = Paths.get("uploads");
-	private static final Path photos = uploads.resolve("photos");
-	private static final Path avatars = uploads.resolve("avatars");
+	private static final int SWEEP_BATCH_SIZE = 10000;
 	
 	@Autowired
 	private PublicationService postService;
@@ -51,116 +70,416 @@ public class FileStorageServiceImpl implements FileStorageService {
 	private UserService userService;
 	
 	@Autowired
-	private PublicationRepository publicationRepository;
+	private StoredBlobRepository storedBlobRepository;
+	
+	@Autowired
+	private BlobStore blobStore;
+	
+	@Autowired
+	private ImageVariantService variantService;
+	
+	@Autowired
+	private MediaCache mediaCache;
 	
 	@Autowired
-	private UserRepository userRepository;
+	private StorageCollector storageCollector;
+	
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+	
+	@Value("${spring.servlet.multipart.max-file-size}")
+	private DataSize maxUploadSize;
+	
+	@Value("${app.media.max-dimension}")
+	private int maxDimension;
+	
+	@Value("${app.media.max-pixels}")
+	private long maxPixels;
+	
+	@Value("${app.media.sweep.min-age}")
+	private Duration sweepMinAge;
+	
+	@Value("${app.media.redirect-max-age}")
+	private Duration redirectMaxAge;
+	
+	private boolean presigns;
+	
+	private Cache<String, Optional<URI>> redirects;
+	
+	private Cache<String, String> mediaTypes;
+
+	@PostConstruct
+	public void buildRedirectCache() {
+		/* Signing is local, whether the store presigns at all is settled once. */
+		presigns = blobStore.presign(key(AVATARS, User.DEFAULT_AVATAR)).isPresent();
+		redirects = Caffeine.newBuilder()
+				.expireAfterWrite(redirectMaxAge)
+				.maximumSize(10_000)
+				.build();
+		mediaTypes = Caffeine.newBuilder()
+				.maximumSize(10_000)
+				.build();
+	}
 
 	@Override
 	public void init() throws IOException {
-
-		if (!Files.isDirectory(photos)) {
-			Files.createDirectories(photos);
-		}
-		
-		if (!Files.isDirectory(avatars)) {
-			Files.createDirectories(avatars);
-			var newFilePath = avatars.resolve("default.jpeg");
+		var defaultAvatar = key(AVATARS, User.DEFAULT_AVATAR);
+		if (!blobStore.exists(defaultAvatar)) {
 			var picture = "/9j/4AAQSkZJRgABAQEBLAEsAAD/4QBWRXhpZgAATU0AKgAAAAgABAEaAAUAAAABAAAAPgEbAAUAAAABAAAARgEoAAMAAAABAAIAAAITAAMAAAABAAEAAAAAAAAAAAEsAAAAAQAAASwAAAAB/+0ALFBob3Rvc2hvcCAzLjAAOEJJTQQEAAAAAAAPHAFaAAMbJUccAQAAAgAEAP/hDIFodHRwOi8vbnMuYWRvYmUuY29tL3hhcC8xLjAvADw/eHBhY2tldCBiZWdpbj0n77u/JyBpZD0nVzVNME1wQ2VoaUh6cmVTek5UY3prYzlkJz8+Cjx4OnhtcG1ldGEgeG1sbnM6eD0nYWRvYmU6bnM6bWV0YS8nIHg6eG1wdGs9J0ltYWdlOjpFeGlmVG9vbCAxMC4xMCc+CjxyZGY6UkRGIHhtbG5zOnJkZj0naHR0cDovL3d3dy53My5vcmcvMTk5OS8wMi8yMi1yZGYtc3ludGF4LW5zIyc+CgogPHJkZjpEZXNjcmlwdGlvbiByZGY6YWJvdXQ9JycKICB4bWxuczp0aWZmPSdodHRwOi8vbnMuYWRvYmUuY29tL3RpZmYvMS4wLyc+CiAgPHRpZmY6UmVzb2x1dGlvblVuaXQ+MjwvdGlmZjpSZXNvbHV0aW9uVW5pdD4KICA8dGlmZjpYUmVzb2x1dGlvbj4zMDAvMTwvdGlmZjpYUmVzb2x1dGlvbj4KICA8dGlmZjpZUmVzb2x1dGlvbj4zMDAvMTwvdGlmZjpZUmVzb2x1dGlvbj4KIDwvcmRmOkRlc2NyaXB0aW9uPgoKIDxyZGY6RGVzY3JpcHRpb24gcmRmOmFib3V0PScnCiAgeG1sbnM6eG1wTU09J2h0dHA6Ly9ucy5hZG9iZS5jb20veGFwLzEuMC9tbS8nPgogIDx4bXBNTTpEb2N1bWVudElEPmFkb2JlOmRvY2lkOnN0b2NrOjFlMjI3NGQ0LTk1MGEtNGY3ZC04NTQzLWRhMGRlYzE3Mjk2NDwveG1wTU06RG9jdW1lbnRJRD4KICA8eG1wTU06SW5zdGFuY2VJRD54bXAuaWlkOjFjZTYxODdjLTRkMDgtNGMzYy04MDU1LTY2OWVlODJiZjRiMDwveG1wTU06SW5zdGFuY2VJRD4KIDwvcmRmOkRlc2NyaXB0aW9uPgo8L3JkZjpSREY+CjwveDp4bXBtZXRhPgogICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgCiAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAKICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgIAogICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgCiAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAKICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgIAogICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgCiAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAKICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgIAogICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgCiAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAKICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgIAogICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgCiAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAKICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgIAogICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgCiAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAKICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgIAogICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgCiAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAKICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgIAogICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgCiAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAKICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgIAo8P3hwYWNrZXQgZW5kPSd3Jz8+/9sAQwAFAwQEBAMFBAQEBQUFBgcMCAcHBwcPCwsJDBEPEhIRDxERExYcFxMUGhURERghGBodHR8fHxMXIiQiHiQcHh8e/9sAQwEFBQUHBgcOCAgOHhQRFB4eHh4eHh4eHh4eHh4eHh4eHh4eHh4eHh4eHh4eHh4eHh4eHh4eHh4eHh4eHh4eHh4e/8AAEQgBaAFoAwEiAAIRAQMRAf/EABwAAQADAQEBAQEAAAAAAAAAAAAFBgcEAwECCP/EAEIQAQABAwICAwwHBwQCAwAAAAABAgMEBREGIRIxQQcTIlFhcYGRobHB0RQWMkJVYnIjM0NSkrLhJTRTk1RjRHOC/8QAFgEBAQEAAAAAAAAAAAAAAAAAAAEC/8QAFhEBAQEAAAAAAAAAAAAAAAAAABEB/9oADAMBAAIRAxEAPwD+ygAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAedy9atfvLtuj9VUQD0HN9Owv/Mx/+2n5vW3es3f3d2iv9NUSD0AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAABH65quNpOHN/IneqeVu3HXXPij5g68rIsYtiq/kXaLVunrqqnaFR1fjWmmZt6ZY6f/tuxtHop+asazquZquR33KueDE+Bbj7NHmj4uFYlSGbreq5kz3/ADr3Rn7tE9Cn1Qj6vCnerwp8c8wVHzaPFHqfafBnenlPjjkAJDC1vVsOY7xnXujH3a56dPqlZdI41pqmLep2Oh/7bUbx6afkpQitjxcixlWKb+Pdou26uqqmd4erJdG1XM0rI77i3PBmfDtz9mvzx8WlaHquNq2HF/HnaqOVy3PXRPin5oqQAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAB4Z+VZwcO7lZFXRt26d58vkjysq1nUr+qZ1eVfnbflRRvyop7IhP90PVJvZlOmWqv2dnwru3bXPVHoj3qouJoAqAAAAAADs0bUr+l51GVYnfblXRvyrp7YlxgNhwMqznYdrKx6ulbuU7x5PJPle6hdzzVJs5lWmXav2d7eq1v2Vx1x6Y9y+stAAAAAAAAAAAAAAAAAAAAAAAAAAAAAADwzsijEw72Vc+zaomufRD3Vzug5PedAm1E879ymj0Rzn3Az3Iu3Mi/cv3Z3uXKprqnyzzfgGmQAAAAAAAAAH7x7tzHv279qdrluqK6Z8sNewcijLw7OVb+zdoiuPTDHmi9z7J79oEWpnnYuVUeiece9NXFjARQAAAAAAAAAAAAAAAAAAAAAAAAAAABSe6bd8LBs+SuufZHzXZQe6XP8AqmJHisT/AHGGqqA0yAAAAAAAAAALl3MrvhZ1jyUVx7Y+SmrX3NJ/1TLjx2I/uTVxfQEUAAAAAAAAAAAAAAAAAAAAAAAAAAAAUTumUTGbhXOybVVPqmPmvapd0uxNWn4uRH8O7NM+aqP8GGqIA0yAAAAAAAAAALb3M6JnNzbnZFqmn1zPyVJe+5pYmnTsrImP3l2KY81Mf5TVxbQEUAAAAAAAAAAAAAAAAAAAAAAAAAAAARnFGHOboOVYpjeuKOnR+qnnHuSYDFxKcU6dOm6zesxTtarnvlr9M9noneEW0yAAAAAAAAAANV4Xw5wdCxbFUbV9Dp1/qq5z72fcLadOpazZszTvaonvl39MdnpnaGqJq4AIoAAAAAAAAAAAAAAAAAAAAAAAAAAAAACD4x0idU03pWad8mxvVb/NHbT6fezOeU7TG0toUzjXhyquqvU8C3vM879qmOc/mj4x6VxFKAVAAAAAAAjnO0RvIuvBXDlVFVGp59vaY52LVUc4/NPwj0oqW4O0idL03pXqdsm/tVc/LHZT6PenQRQAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAFY4j4UsZ1VWTgzTj5E86qZ+xXPwnyqPqGBmafd71mY9dmrsmY5T5p6pa+871q1ftzbvW6LlE9dNdO8T6AY2NIzeEdHyJmq3buY1U/wDFXy9U7wi73AtP8HUqo8ldrf3StSKWLf8AUbI/EbX/AFT83ra4Fp/jalVPkotbe+QUt06fgZmoXe9YePXeq7ZiOUeeeqF/wuEdHx5iq5buZNUf8tfL1RtCds2rVm3Fuzbot0R1U007RBSK3w5wpYwaqcnOmnIyI500xHgUT8Z8qzgigAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA+VTFNM1VTERHXM9iHz+JtGw5mmrLi9XH3bMdP29XtBMil5fHMc4xNPmfFVdubeyPmjb/GWs3J8D6Naj8tvf3ysK0Z8ZhVxRrtX/AM+Y81umPg+fWbXfxCv+in5EStQGX/WbXfxCv+in5H1m138Qr/op+RCtQGX/AFm138Qr/op+R9Ztd/EK/wCin5EK1AZf9Ztd/EK/6KfkfWbXfxCv+in5EK1EZfTxPrtM/wC/qnz26Z+Dps8Y6zbnw6se7+q1t7pghWjik4vHNXVlafE+Oq1c+E/NNYPFOjZUxTOTOPXP3b1PR9vV7UVOD8266LlEV0VU10z1TTO8S/QAAAAAAAAAAAAAAAAAAAAAAAAAIHiLiXE0vpWbe2Rlf8cTyp/VPw6wTOTfs41mq9kXaLVunrqqnaIVTWONbVE1WtMs99nq77cjan0R1z7FS1TU83U7/fcy9Ne32aY5U0+aHIsSuzUdU1DUat8zKuXI7KN9qY9EcnGCoAAAAAAAAAAAAAA6cDPzcCvp4eTcsz2xTPKfPHVK06RxrMbW9Usbx1d9tR76fl6lNEVsGFmYubYi9iX6L1ue2merz+J0MewczKwb8X8S9XauR20z1+SY7V64d4sx82acbPinHyJ5RV9yufhPkIVZwEUAAAAAAAAAAAAAAAAAABUuONfnGpnTMOva9VH7auJ50RPZHln2QDz4t4pm1VXgaZX4ccrl+Pu+Sny+VSJmZmZmZmZ5zM9oKgAqAAAAAAAAAAAAAAAAAAAALVwpxRXiTRh6jXNeP1UXZ5zb8k+OPcvtNUVUxVTMTTMbxMTyljC2cD69OPdo0zMr/Y1ztZrmfsT/AC+afZKKvgCKAAAAAAAAAAAAAAAAjuIdSp0vSruVO01/ZtUz21T1fP0Mqu3K7t2u7dqmuuuZqqqnrmZ7Vo7o2bN3UrOFTPgWKOlVH5qv8betVVxNAFQAAAAAAAAAAAAAAAAAAAAAAABpnBmqzqelRF2rfIsbUXJ7ao7KvTHtiU4zXgPLnG1+3amdqMimbc+frj2x7WlMtAAAAAAAAAAAAAAAPLLuxYxbt+eq3RVX6o3BlfEWR9K13Nvb7xN6qI80co9zgJmapmqeuecisgCgAAAAAAAAAAAAAAAAAAAAAAAD3069ONqGNkR/Du01eqYbAxeeqWvaRe+kaViX99+nZoqnz7QmrjrARQAAAAAAAAAAABE8X3e88N5tUTtM2+hH/wCpiPillb7olzocPxRv+8vUU+refgDOwGmQAAAAAAAAAAAAAAAAAAAAAAAAABp3BN3vvDWJz50RVRPoqlmLQu5xc6WhXKO2i/VHriJTVxZgEUAAAAAAAAAAAAVDumV7YWHb/mu1T6qf8repXdOq54FP/wBk/wBphqmANMgAAAAAAAAAAAAAAAAAAAAAAAAAC8dzKrfFzqPFcpn1x/hR1z7mM+Fn0+S3P9yauLqAigAAAAAAAAAAACk906PDwJ8lyP7V2VHumWpnBw723Ki7VTPpj/AaooDTIAAAAAAAAAAAAAAAAAAAAAAAAAAuXcxjw8+rs2tx/cpq9dzO3MYOZe25V3aaY9FP+U1cW4BFAAAAAAAAAAAAETxZg1ahoWRZt09K5TEXLceOaee3q3hLAMXF24r4VquV152l0eFPhXLEds9s0/JSaqZpqmmqJpqidpiY2mJVABUAAAAAAAAAAAAAAAAAAAAAAAAGocH4dWFoGPRXG1y5vdrjxTVz92yr8H8OV5lyjPzqJpxqZ6VuiY53Z8f6fe0BNXABFAAAAAAAAAAAAAAERrnD+BqsTXcpm1kbcr1HX6fGlwGYaxw3qenTVX3r6RYj+Jajfbzx1whm0IrVNA0rUd6r2NTRcn+Jb8Gr2dfpWpGWC26hwRk0b1YOVRdj+S7HRq9ccvcr+dpGp4W/0nCvUUx96KelT645A4h8fVQAAAAAAAAAAAAAAA7du0ASen6Dq2dtNnDuU0T9+54FPt+Cy6XwTZomK9RyZuz/AMdrwafX1z7EVTcPEycy/FjFs13rk9lMdXn8S68PcIWseacjU5pvXY5xajnRT5/5vd51mwsTGw7MWcWxbs0R2URtv5/G90pHyI2jaH0BQAAAAAAAAAAAAAAAAAAAAAHDmaTpmZvOTg2Lkz97obT645ojK4M0m7vNmrIsT+WvpR6pWUBR8nga9H+31C3V5LluY9sbo6/whrVuZ6Fuxej8l2Pjs0kKRlN7QNatfa03In9MRV7nJdws21+8w8mjz2qo+DYH1akYxVTVT9qmqPPGz87x449baKqaavtRE+eHlVjY9X2rFqfPRBSMc3jxx6zePHHrbDODhT14mP8A9VPyfPoOF/4eP/1U/IpGP7x449b7HPq5+ZsNOJi0/ZxrMea3D0pt0U/ZopjzRBSMft42Tc/d496v9NuZ+DqtaLq937Gm5U+Wbe3vayFIzSxwnrdzbpY9u1E/z3Y+G6RxuBsqqY+k59miPFbomqfbsvQVYrOJwZpVrab9eRkT5aujHqhNYWl6dhbfRcKxamPvRTz9c83YIAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAP/9k=";
-			var bytes = Base64.getDecoder().decode(picture);
-			Files.write(newFilePath, bytes, StandardOpenOption.CREATE);
+			var tmp = blobStore.createTempFile();
+			Files.write(tmp, Base64.getDecoder().decode(picture));
+			blobStore.put(defaultAvatar, tmp, MediaType.IMAGE_JPEG_VALUE);
 		}
 	}
 
 	@Override
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
 	public void save(MultipartFile file, String description) throws IncorrectFileExtensionException, IOException {
-
-		String fileContentType = file.getContentType();
-
-		if (contentTypes.contains(fileContentType)) {
-			String generatedName = UUID.randomUUID().toString() + '.'
-					+ FilenameUtils.getExtension(file.getOriginalFilename());
-
-			Files.copy(file.getInputStream(), photos.resolve(generatedName));
-			postService.createPost(generatedName, description);
-
-		} else {
-			throw new IncorrectFileExtensionException("Invalid file extension. Only PNG/JPEG files are allowed");
+		try (var in = file.getInputStream()) {
+			save(in, file.getSize(), description);
 		}
+	}
 
+	@Override
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void save(InputStream body, long length, String description) throws IncorrectFileExtensionException, IOException {
+		var upload = receive(PHOTOS, body, length, "Invalid file extension. Only PNG/JPEG files are allowed");
+		reference(PHOTOS, upload, () -> postService.createPost(upload.key, description));
+		if (upload.created) {
+			generateVariants(upload.path);
+		}
 	}
 	
 	@Override
 	@Async
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
 	public CompletableFuture<AvatarResponse> saveAvatar(MultipartFile file) throws IncorrectFileExtensionException, IOException {
+		try (var in = file.getInputStream()) {
+			return saveAvatar(in, file.getSize());
+		}
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public CompletableFuture<AvatarResponse> saveAvatar(InputStream body, long length) throws IncorrectFileExtensionException, IOException {
+		var upload = receive(AVATARS, body, length, "Invalid file extension. Only png/jpeg/webp/bmp files are allowed");
+		var response = reference(AVATARS, upload, () -> userService.setProfilePicture(upload.key));
+		if (upload.created) {
+			generateVariants(upload.path);
+		}
+		return CompletableFuture.completedFuture(response);
+	}
+
+	/**
+	 * Streams an upload into the store, outside of any transaction. The type
+	 * is sniffed from the first bytes, the size limit enforced and a SHA-256
+	 * computed while the body is copied to a temporary file, which an aborted
+	 * or oversized upload does not outlive. The pixel size is then read from
+	 * the image header, so that an image too large to decode is refused before
+	 * anything decodes it. The hash names the file, so an upload of bytes
+	 * already stored is dropped in favour of the existing file.
+	 */
+	private Upload receive(String directory, InputStream body, long length, String invalidType) throws IOException {
+		var max = maxUploadSize.toBytes();
+		if (length > max) {
+			throw new MaxUploadSizeExceededException(max);
+		}
+
+		var in = new DigestInputStream(body, sha256());
+		var header = in.readNBytes(ImageProbe.MAGIC_LENGTH);
+		if (ImageProbe.format(header) == null) {
+			throw new IncorrectFileExtensionException(invalidType);
+		}
 
-		String fileContentType = file.getContentType();
+		var tmp = blobStore.createTempFile();
+		try {
+			long total = header.length;
+			try (var out = Files.newOutputStream(tmp)) {
+				out.write(header);
+				var buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					total += read;
+					if (total > max) {
+						throw new MaxUploadSizeExceededException(max);
+					}
+					out.write(buffer, 0, read);
+				}
+			}
+			if (length >= 0 && total != length) {
+				throw new EOFException("Upload interrupted after " + total + " of " + length + " bytes");
+			}
+			var image = probe(tmp, invalidType);
 
-		if (contentTypes.contains(fileContentType)) {
-			String generatedName = UUID.randomUUID().toString() + '.'
-					+ FilenameUtils.getExtension(file.getOriginalFilename());
+			var key = base32(in.getMessageDigest().digest()) + '.' + image.format();
+			var target = key(directory, key);
+			if (blobStore.exists(target)) {
+				Files.delete(tmp);
+				logger.debug("Upload of {} bytes deduplicated to {}", total, key);
+				return new Upload(key, target, image, false);
+			}
+			blobStore.put(target, tmp, image.mediaType());
+			logger.debug("Stored {} ({} bytes)", key, total);
+			return new Upload(key, target, image, true);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tmp);
+			throw e;
+		}
+	}
 
-			Files.copy(file.getInputStream(), avatars.resolve(generatedName));
-			return userService.setProfilePicture(generatedName);
+	/**
+	 * Takes a reference on a stored upload and records it in one short
+	 * transaction. The blob row is locked first, so the collector cannot
+	 * delete the file until the reference is committed; a file it deleted
+	 * just before is noticed and the upload refused. When the transaction
+	 * fails the file is journaled for the collector to check.
+	 */
+	private <T> T reference(String directory, Upload upload, Supplier<T> record) throws IOException {
+		try {
+			return transactionTemplate.execute(status -> {
+				storageCollector.acquire(directory, upload.key, upload.image.mediaType());
+				try {
+					if (!blobStore.exists(upload.path)) {
+						throw new NoSuchFileException(upload.path, null, "Collected while the upload was stored, try again");
+					}
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				return record.get();
+			});
+		} catch (RuntimeException e) {
+			storageCollector.orphaned(directory, List.of(upload.key));
+			if (e instanceof UncheckedIOException) {
+				throw ((UncheckedIOException) e).getCause();
+			}
+			throw e;
+		}
+	}
 
-		} else {
-			throw new IncorrectFileExtensionException("Invalid file extension. Only png/jpeg/webp/bmp files are allowed");
+	/* Reads the image header only, the staged file is never decoded here. */
+	private ImageProbe probe(Path file, String invalidType) throws IOException {
+		ImageProbe image;
+		try (var in = Files.newInputStream(file)) {
+			image = ImageProbe.probe(in);
+		}
+		if (image == null) {
+			throw new IncorrectFileExtensionException(invalidType);
+		}
+		if (image.width() > maxDimension || image.height() > maxDimension || image.pixels() > maxPixels) {
+			throw new ImageTooLargeException("Image of " + image.width() + "x" + image.height()
+					+ " pixels, at most " + maxDimension + " per side and " + maxPixels + " in total are allowed");
 		}
+		return image;
+	}
 
+	/* Lower case RFC 4648 base32 without padding, short enough for the key columns and safe for case-insensitive file systems. */
+	private static String base32(byte[] bytes) {
+		var alphabet = "abcdefghijklmnopqrstuvwxyz234567";
+		var out = new StringBuilder((bytes.length * 8 + 4) / 5);
+		int buffer = 0;
+		int bits = 0;
+		for (var b : bytes) {
+			buffer = (buffer << 8) | (b & 0xff);
+			bits += 8;
+			while (bits >= 5) {
+				out.append(alphabet.charAt((buffer >>> (bits - 5)) & 31));
+				bits -= 5;
+			}
+		}
+		if (bits > 0) {
+			out.append(alphabet.charAt((buffer << (5 - bits)) & 31));
+		}
+		return out.toString();
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void generateVariants(String original) {
+		try {
+			variantService.generateVariants(original);
+		} catch (TaskRejectedException e) {
+			logger.warn("Image pool saturated, {} will be served at full size", original);
+		}
 	}
 
 	@Override
-	public Resource loadPhoto(String filename) throws MalformedURLException, FileNotFoundException {
-		return getResource(photos.resolve(filename).toUri(), filename);
+	public Media loadPhoto(String filename, Integer size) throws IOException {
+		return load(PHOTOS, filename, size);
 	}
 	
 	@Override
-	public Resource loadAvatar(String filename) throws MalformedURLException, FileNotFoundException {
-		return getResource(avatars.resolve(filename).toUri(), filename);	
+	public Media loadAvatar(String filename, Integer size) throws IOException {
+		return load(AVATARS, filename, size);
 	}
 	
-	private Resource getResource(URI uri, String filename) throws FileNotFoundException, MalformedURLException {
-		
-		Resource resource = new UrlResource(uri);
-
-		if (resource.exists() || resource.isReadable()) {
-			return resource;
-		} else {
-			throw new FileNotFoundException("Optional file " + filename + " was not found.");
+	/* The original stands in for a size whose copy is missing, until the copy is generated. */
+	private Media load(String directory, String filename, Integer size) throws IOException {
+		return mediaCache.get(directory, filename, size, () -> {
+			var original = key(directory, filename);
+			var served = variantService.resolve(original, size);
+			return new Media(blobStore.load(served), size == null || !served.equals(original));
+		});
+	}
+	
+	@Override
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public String photoMediaType(String filename) {
+		return mediaType(PHOTOS, filename);
+	}
+	
+	@Override
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public String avatarMediaType(String filename) {
+		return mediaType(AVATARS, filename);
+	}
+	
+	/**
+	 * The type read from the image header on upload, which the resized copies
+	 * share. Keys name their content, so the type never changes and is cached
+	 * for good. Files stored before types were recorded fall back to their
+	 * extension.
+	 */
+	private String mediaType(String directory, String filename) {
+		return mediaTypes.get(StoredBlob.path(directory, filename), path -> storedBlobRepository.findMediaType(path)
+				.orElseGet(() -> MediaTypeFactory.getMediaType(filename).orElse(MediaType.APPLICATION_OCTET_STREAM).toString()));
+	}
+	
+	@Override
+	public Optional<URI> photoRedirect(String filename, Integer size) throws IOException {
+		return redirect(PHOTOS, filename, size);
+	}
+	
+	@Override
+	public Optional<URI> avatarRedirect(String filename, Integer size) throws IOException {
+		return redirect(AVATARS, filename, size);
+	}
+	
+	/**
+	 * Presigned URLs are reused while the redirect may be cached by clients,
+	 * which also saves looking up the variant on every request. A store that
+	 * does not presign is served without any of this.
+	 */
+	private Optional<URI> redirect(String directory, String filename, Integer size) throws IOException {
+		if (!presigns) {
+			return Optional.empty();
+		}
+		var cacheKey = directory + '/' + filename + '@' + size;
+		var uri = redirects.getIfPresent(cacheKey);
+		if (uri == null) {
+			uri = blobStore.presign(variantService.resolve(key(directory, filename), size));
+			redirects.put(cacheKey, uri);
 		}
-		
+		return uri;
+	}
+	
+	/**
+	 * Uploads are stored under two levels named after the first characters of
+	 * their name, {@code photos/ab/cd/abcd...jpg}, so that no directory grows to
+	 * millions of entries.
+	 */
+	static String key(String directory, String name) {
+		if (name.length() < 4) {
+			return directory + '/' + name;
+		}
+		return directory + '/' + name.substring(0, 2) + '/' + name.substring(2, 4) + '/' + name;
 	}
 	
 	@Override
-	public void deleteUnusedPhotos() throws IOException {
-		try (Stream<Path> walk = Files.walk(uploads)){
-			walk.filter(Files::isRegularFile)
-	    		 .filter(f -> !f.getFileName().toString().endsWith(".tmp"))
-	    		 .filter(f -> !publicationRepository.existsByFilepath(f.getFileName().toString()))
-	    		 .forEach(t -> {
-					try {
-						Files.delete(t);
-					} catch (IOException e) {
-						logger.error("Could not delete the file: {}", e.getMessage());
-					}
-				});
+	public int migrateLayout(int limit) throws IOException {
+		var moved = blobStore.migrateLayout(PHOTOS, limit);
+		return moved + blobStore.migrateLayout(AVATARS, limit - moved);
+	}
+	
+	@Override
+	public void delete(String directory, String key) throws IOException {
+		var original = key(directory, key);
+		for (var variant : variantService.variants(original)) {
+			blobStore.delete(variant);
 		}
+		blobStore.delete(original);
+		mediaCache.invalidate(key);
+	}
+	
+	@Override
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void deleteUnusedPhotos() throws IOException {
+		sweep(PHOTOS, referenced(PHOTOS));
 	}
 	
 	@Override
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
 	public void deleteUnusedAvatars() throws IOException {
-		try (Stream<Path> walk = Files.walk(uploads)){
-			walk.filter(Files::isRegularFile)
-	    		 .filter(f -> !f.getFileName().toString().equals("default.jpg"))
-	    		 .filter(f -> !userRepository.existsByAvatar(f.getFileName().toString()))
-	    		 .forEach(t -> {
-					try {
-						Files.delete(t);
-					} catch (IOException e) {
-						logger.error("Could not delete the file: {}", e.getMessage());
-					}
-				});
+		var referenced = referenced(AVATARS);
+		referenced.add(User.DEFAULT_AVATAR);
+		sweep(AVATARS, referenced);
+	}
+	
+	/* Keys of the directory whose reference count is above zero. */
+	private Set<String> referenced(String directory) {
+		var referenced = new HashSet<String>();
+		var prefix = directory.length() + 1;
+		var paths = storedBlobRepository.findReferencedAfter(directory, "", PageRequest.of(0, SWEEP_BATCH_SIZE));
+		while (!paths.isEmpty()) {
+			paths.forEach(path -> referenced.add(path.substring(prefix)));
+			paths = storedBlobRepository.findReferencedAfter(directory, paths.get(paths.size() - 1), PageRequest.of(0, SWEEP_BATCH_SIZE));
 		}
+		return referenced;
 	}
-}
+	
+	/**
+	 * Deletes the files of a directory, resized variants included, whose name is
+	 * not referenced. Recent files are kept: an upload is written before the row
+	 * that references it is committed.
+	 */
+	private void sweep(String directory, Set<String> referenced) throws IOException {
+		var start = System.currentTimeMillis();
+		var threshold = start - sweepMinAge.toMillis();
+		var scanned = new AtomicInteger();
+		var recent = new AtomicInteger();
+		var deleted = new AtomicInteger();
+
+		blobStore.list(directory + '/', (key, lastModified) -> {
+			var name = key.substring(key.lastIndexOf('/') + 1);
+			if (name.endsWith(".tmp")) {
+				return;
+			}
+			scanned.incrementAndGet();
+			if (referenced.contains(name)) {
+				return;
+			}
+			if (lastModified > threshold) {
+				recent.incrementAndGet();
+				return;
+			}
+			try {
+				blobStore.delete(key);
+				deleted.incrementAndGet();
+			} catch (IOException e) {
+				logger.error("Could not delete the file: {}", e.getMessage());
+			}
+		});
+		logger.info("Swept {}: {} files scanned against {} references, {} deleted, {} too recent, in {} ms",
+				directory, scanned.get(), referenced.size(), deleted.get(), recent.get(), System.currentTimeMillis() - start);
+	}
+
+	private static final class Upload {
+
+		private final String key;
+		private final String path;
+		private final ImageProbe image;
+		private final boolean created;
 
+		private Upload(String key, String path, ImageProbe image, boolean created) {
+			this.key = key;
+			this.path = path;
+			this.image = image;
+			this.created = created;
+		}
+	}
+}
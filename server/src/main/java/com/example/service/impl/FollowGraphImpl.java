@@ -0,0 +1,282 @@
+package com.example.service.impl;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.rest.dao.FollowerRepository;
+import com.example.service.FollowGraph;
+
+/**
+ * In-memory copy of the follower table. Every user maps to two sorted
+ * {@code long[]} of neighbour ids, one per direction, so membership is a
+ * binary search and intersections are a linear merge. Arrays are replaced on
+ * write, readers never lock. Until the startup load has completed, queries are
+ * answered by the database and updates are queued then replayed. The graph is
+ * reloaded periodically to pick up follows written by other nodes or lost to a
+ * failed flush; updates made during a reload are replayed on the new copy.
+ */
+@Service
+public class FollowGraphImpl implements FollowGraph {
+
+	private static final Logger logger = LoggerFactory.getLogger(FollowGraphImpl.class);
+	private static final int BATCH_SIZE = 10000;
+	private static final long[] EMPTY = new long[0];
+
+	@Autowired
+	private FollowerRepository followerRepository;
+
+	private volatile Map<Long, long[]> following = new ConcurrentHashMap<>();
+	private volatile Map<Long, long[]> followers = new ConcurrentHashMap<>();
+	private volatile boolean ready;
+	private boolean reloading;
+
+	private final Object lock = new Object();
+	private final Queue<long[]> pending = new ArrayDeque<>();
+
+	@EventListener(ApplicationReadyEvent.class)
+	@Scheduled(fixedDelayString = "${follow-graph.resync-delay-ms}", initialDelayString = "${follow-graph.resync-delay-ms}")
+	public void load() {
+		synchronized (lock) {
+			if (reloading) {
+				return;
+			}
+			reloading = true;
+		}
+		try {
+			reload();
+		} finally {
+			synchronized (lock) {
+				reloading = false;
+				pending.clear();
+			}
+		}
+	}
+
+	private void reload() {
+		var start = System.nanoTime();
+		var out = new HashMap<Long, long[]>();
+		var in = new HashMap<Long, long[]>();
+		var outSize = new HashMap<Long, int[]>();
+		var inSize = new HashMap<Long, int[]>();
+		var edges = 0L;
+		var after = 0L;
+		var batch = followerRepository.findEdgesAfter(after, PageRequest.of(0, BATCH_SIZE));
+
+		while (!batch.isEmpty()) {
+			for (Object[] row : batch) {
+				append(out, outSize, (Long) row[1], (Long) row[2]);
+				append(in, inSize, (Long) row[2], (Long) row[1]);
+				after = (Long) row[0];
+				edges++;
+			}
+			batch = followerRepository.findEdgesAfter(after, PageRequest.of(0, BATCH_SIZE));
+		}
+
+		var newFollowing = compact(out, outSize);
+		var newFollowers = compact(in, inSize);
+
+		synchronized (lock) {
+			following = newFollowing;
+			followers = newFollowers;
+			while (!pending.isEmpty()) {
+				var op = pending.poll();
+				apply(op[0], op[1], op[2] == 1);
+			}
+			ready = true;
+		}
+		var bytes = footprint(newFollowing) + footprint(newFollowers);
+		var users = newFollowing.size() + newFollowers.keySet().stream().filter(id -> !newFollowing.containsKey(id)).count();
+		logger.info("Follow graph loaded in {} ms: {} edges, {} users, ~{} KB, ~{} MB per million edges",
+				(System.nanoTime() - start) / 1_000_000, edges, users,
+				bytes / 1024, edges == 0 ? 0 : bytes * 1_000_000 / edges / (1024 * 1024));
+	}
+
+	@Override
+	public boolean isFollowed(long from, long to) {
+		if (!ready) {
+			return followerRepository.existsByFromIdAndToId(from, to);
+		}
+		return Arrays.binarySearch(following.getOrDefault(from, EMPTY), to) >= 0;
+	}
+
+	@Override
+	public int followerCount(long userId) {
+		if (!ready) {
+			return (int) followerRepository.countByToId(userId);
+		}
+		return followers.getOrDefault(userId, EMPTY).length;
+	}
+
+	@Override
+	public int followingCount(long userId) {
+		if (!ready) {
+			return (int) followerRepository.countByFromId(userId);
+		}
+		return following.getOrDefault(userId, EMPTY).length;
+	}
+
+	@Override
+	public long[] followingInCommon(long user1, long user2) {
+		if (!ready) {
+			return toArray(followerRepository.findFollowingInCommon(user1, user2));
+		}
+		return intersect(following.getOrDefault(user1, EMPTY), following.getOrDefault(user2, EMPTY));
+	}
+
+	@Override
+	public long[] followersInCommon(long user1, long user2) {
+		if (!ready) {
+			return toArray(followerRepository.findFollowersInCommon(user1, user2));
+		}
+		return intersect(followers.getOrDefault(user1, EMPTY), followers.getOrDefault(user2, EMPTY));
+	}
+
+	@Override
+	public void follow(long from, long to) {
+		update(from, to, true);
+	}
+
+	@Override
+	public void unfollow(long from, long to) {
+		update(from, to, false);
+	}
+
+	@Override
+	public void removeUser(long userId) {
+		for (long to : following.getOrDefault(userId, EMPTY)) {
+			update(userId, to, false);
+		}
+		for (long from : followers.getOrDefault(userId, EMPTY)) {
+			update(from, userId, false);
+		}
+	}
+
+	/* Applied under the lock, so that an update cannot land on the old copy after a reload has swapped it. */
+	private void update(long from, long to, boolean add) {
+		synchronized (lock) {
+			if (!ready || reloading) {
+				pending.add(new long[] { from, to, add ? 1 : 0 });
+			}
+			if (ready) {
+				apply(from, to, add);
+			}
+		}
+	}
+
+	private void apply(long from, long to, boolean add) {
+		if (add) {
+			following.compute(from, (k, ids) -> insert(ids, to));
+			followers.compute(to, (k, ids) -> insert(ids, from));
+		} else {
+			following.computeIfPresent(from, (k, ids) -> remove(ids, to));
+			followers.computeIfPresent(to, (k, ids) -> remove(ids, from));
+		}
+	}
+
+	private static long[] insert(long[] ids, long id) {
+		if (ids == null) {
+			return new long[] { id };
+		}
+		var pos = Arrays.binarySearch(ids, id);
+		if (pos >= 0) {
+			return ids;
+		}
+		pos = -pos - 1;
+		var result = new long[ids.length + 1];
+		System.arraycopy(ids, 0, result, 0, pos);
+		result[pos] = id;
+		System.arraycopy(ids, pos, result, pos + 1, ids.length - pos);
+		return result;
+	}
+
+	/* Returning null drops the entry so that users without edges cost nothing. */
+	private static long[] remove(long[] ids, long id) {
+		var pos = Arrays.binarySearch(ids, id);
+		if (pos < 0) {
+			return ids;
+		}
+		if (ids.length == 1) {
+			return null;
+		}
+		var result = new long[ids.length - 1];
+		System.arraycopy(ids, 0, result, 0, pos);
+		System.arraycopy(ids, pos + 1, result, pos, ids.length - pos - 1);
+		return result;
+	}
+
+	private static long[] intersect(long[] a, long[] b) {
+		var result = new long[Math.min(a.length, b.length)];
+		int i = 0;
+		int j = 0;
+		int n = 0;
+
+		while (i < a.length && j < b.length) {
+			if (a[i] < b[j]) {
+				i++;
+			} else if (a[i] > b[j]) {
+				j++;
+			} else {
+				result[n++] = a[i];
+				i++;
+				j++;
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	private static long[] toArray(List<Long> ids) {
+		return ids.stream().mapToLong(Long::longValue).toArray();
+	}
+
+	private static void append(Map<Long, long[]> lists, Map<Long, int[]> sizes, Long key, long value) {
+		var size = sizes.computeIfAbsent(key, k -> new int[1]);
+		var ids = lists.get(key);
+
+		if (ids == null) {
+			ids = new long[4];
+			lists.put(key, ids);
+		} else if (size[0] == ids.length) {
+			ids = Arrays.copyOf(ids, ids.length * 2);
+			lists.put(key, ids);
+		}
+		ids[size[0]++] = value;
+	}
+
+	private static Map<Long, long[]> compact(Map<Long, long[]> lists, Map<Long, int[]> sizes) {
+		var result = new ConcurrentHashMap<Long, long[]>(lists.size() * 4 / 3 + 1);
+
+		lists.forEach((key, ids) -> {
+			var sorted = Arrays.copyOf(ids, sizes.get(key)[0]);
+			Arrays.sort(sorted);
+			result.put(key, sorted);
+		});
+		return result;
+	}
+
+	/**
+	 * Estimated retained size of one direction: 16 bytes of array header plus 8
+	 * per id, and about 64 bytes per user for the map node, its boxed key and
+	 * its share of the table.
+	 */
+	private static long footprint(Map<Long, long[]> lists) {
+		var bytes = 0L;
+		for (long[] ids : lists.values()) {
+			bytes += 16 + 8L * ids.length + 64;
+		}
+		return bytes;
+	}
+}
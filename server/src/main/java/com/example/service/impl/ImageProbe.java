@@ -0,0 +1,233 @@
+package com.example.service.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Format and pixel size of an image, read from its headers only. Nothing is
+ * decompressed, so a decompression bomb is recognised from the few bytes that
+ * announce its size. JPEG segments before the frame header are skipped, not
+ * read.
+ */
+final class ImageProbe {
+
+	/** Bytes needed by {@link #format(byte[])}. */
+	static final int MAGIC_LENGTH = 12;
+
+	private final String format;
+	private final int width;
+	private final int height;
+
+	private ImageProbe(String format, int width, int height) {
+		this.format = format;
+		this.width = width;
+		this.height = height;
+	}
+
+	/** The file extension of the format. */
+	String format() {
+		return format;
+	}
+
+	String mediaType() {
+		return mediaType(format);
+	}
+
+	/** The media type of an image format named by its file extension. */
+	static String mediaType(String format) {
+		return "jpg".equals(format) || "jpeg".equals(format) ? "image/jpeg" : "image/" + format;
+	}
+
+	int width() {
+		return width;
+	}
+
+	int height() {
+		return height;
+	}
+
+	long pixels() {
+		return (long) width * height;
+	}
+
+	/**
+	 * Picks the extension from the first bytes of the upload rather than from
+	 * the client supplied name and content type, it ends the name of the
+	 * stored file.
+	 */
+	static String format(byte[] header) {
+		var read = header.length;
+		if (read >= 3 && (header[0] & 0xff) == 0xff && (header[1] & 0xff) == 0xd8 && (header[2] & 0xff) == 0xff) {
+			return "jpg";
+		}
+		if (read >= 8 && (header[0] & 0xff) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G') {
+			return "png";
+		}
+		if (read >= 12 && header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F'
+				&& header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+			return "webp";
+		}
+		if (read >= 2 && header[0] == 'B' && header[1] == 'M') {
+			return "bmp";
+		}
+		return null;
+	}
+
+	/** Returns null when the stream is not a supported image or its header is malformed. */
+	static ImageProbe probe(InputStream in) throws IOException {
+		var header = in.readNBytes(MAGIC_LENGTH);
+		/* The format is recognised from fewer bytes than the parsers below read from the header. */
+		if (header.length < MAGIC_LENGTH) {
+			return null;
+		}
+		var format = format(header);
+		if (format == null) {
+			return null;
+		}
+		try {
+			switch (format) {
+			case "png":
+				return png(in);
+			case "jpg":
+				return jpeg(in, header);
+			case "webp":
+				return webp(in);
+			default:
+				return bmp(in, header);
+			}
+		} catch (EOFException e) {
+			return null;
+		}
+	}
+
+	/* The IHDR chunk comes first: length, type, then width and height. */
+	private static ImageProbe png(InputStream in) throws IOException {
+		var chunk = readFully(in, 12);
+		if (chunk[0] != 'I' || chunk[1] != 'H' || chunk[2] != 'D' || chunk[3] != 'R') {
+			return null;
+		}
+		return valid("png", int32(chunk, 4), int32(chunk, 8));
+	}
+
+	/* Walks the segments up to the first start of frame, which holds the size. */
+	private static ImageProbe jpeg(InputStream in, byte[] header) throws IOException {
+		/* The magic bytes already consumed the first marker and the start of its segment. */
+		var first = header[3] & 0xff;
+		if (first >= 0xc0 && first <= 0xcf && first != 0xc4 && first != 0xc8 && first != 0xcc) {
+			return valid("jpg", ((header[9] & 0xff) << 8) | (header[10] & 0xff), ((header[7] & 0xff) << 8) | (header[8] & 0xff));
+		}
+		var length = ((header[4] & 0xff) << 8) | (header[5] & 0xff);
+		if (length < 8) {
+			return null;
+		}
+		skipFully(in, length - 8);
+		while (true) {
+			var marker = read(in);
+			if (marker != 0xff) {
+				return null;
+			}
+			while (marker == 0xff) {
+				marker = read(in);
+			}
+			if (marker == 0xd9 || marker == 0xda) {
+				return null;
+			}
+			if (marker == 0x01 || (marker >= 0xd0 && marker <= 0xd7)) {
+				continue;
+			}
+			var segment = (read(in) << 8) | read(in);
+			if (segment < 2) {
+				return null;
+			}
+			if (marker >= 0xc0 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc) {
+				var frame = readFully(in, 5);
+				return valid("jpg", ((frame[3] & 0xff) << 8) | (frame[4] & 0xff), ((frame[1] & 0xff) << 8) | (frame[2] & 0xff));
+			}
+			skipFully(in, segment - 2);
+		}
+	}
+
+	/* Lossy, lossless and extended files each store the size differently in their first chunk. */
+	private static ImageProbe webp(InputStream in) throws IOException {
+		var chunk = readFully(in, 18);
+		var type = new String(chunk, 0, 4, StandardCharsets.US_ASCII);
+		switch (type) {
+		case "VP8 ":
+			if ((chunk[11] & 0xff) != 0x9d || (chunk[12] & 0xff) != 0x01 || (chunk[13] & 0xff) != 0x2a) {
+				return null;
+			}
+			return valid("webp", int16le(chunk, 14) & 0x3fff, int16le(chunk, 16) & 0x3fff);
+		case "VP8L":
+			if ((chunk[8] & 0xff) != 0x2f) {
+				return null;
+			}
+			var bits = int32le(chunk, 9);
+			return valid("webp", (bits & 0x3fff) + 1, ((bits >>> 14) & 0x3fff) + 1);
+		case "VP8X":
+			return valid("webp", int24le(chunk, 12) + 1, int24le(chunk, 15) + 1);
+		default:
+			return null;
+		}
+	}
+
+	/* The info header follows the file header, its size tells the old 16 bit layout from the newer ones. */
+	private static ImageProbe bmp(InputStream in, byte[] header) throws IOException {
+		var rest = readFully(in, 14);
+		var info = new byte[26];
+		System.arraycopy(header, 0, info, 0, MAGIC_LENGTH);
+		System.arraycopy(rest, 0, info, MAGIC_LENGTH, rest.length);
+		if (int32le(info, 14) == 12) {
+			return valid("bmp", int16le(info, 18), int16le(info, 20));
+		}
+		return valid("bmp", int32le(info, 18), Math.abs(int32le(info, 22)));
+	}
+
+	private static ImageProbe valid(String format, int width, int height) {
+		return width > 0 && height > 0 ? new ImageProbe(format, width, height) : null;
+	}
+
+	private static int read(InputStream in) throws IOException {
+		var b = in.read();
+		if (b < 0) {
+			throw new EOFException();
+		}
+		return b;
+	}
+
+	private static byte[] readFully(InputStream in, int length) throws IOException {
+		var bytes = in.readNBytes(length);
+		if (bytes.length < length) {
+			throw new EOFException();
+		}
+		return bytes;
+	}
+
+	private static void skipFully(InputStream in, long n) throws IOException {
+		while (n > 0) {
+			var skipped = in.skip(n);
+			if (skipped <= 0) {
+				read(in);
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+
+	private static int int32(byte[] b, int at) {
+		return ((b[at] & 0xff) << 24) | ((b[at + 1] & 0xff) << 16) | ((b[at + 2] & 0xff) << 8) | (b[at + 3] & 0xff);
+	}
+
+	private static int int32le(byte[] b, int at) {
+		return (b[at] & 0xff) | ((b[at + 1] & 0xff) << 8) | ((b[at + 2] & 0xff) << 16) | ((b[at + 3] & 0xff) << 24);
+	}
+
+	private static int int24le(byte[] b, int at) {
+		return (b[at] & 0xff) | ((b[at + 1] & 0xff) << 8) | ((b[at + 2] & 0xff) << 16);
+	}
+
+	private static int int16le(byte[] b, int at) {
+		return (b[at] & 0xff) | ((b[at + 1] & 0xff) << 8);
+	}
+}
@@ -0,0 +1,205 @@
+package com.example.service.impl;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import com.example.service.BlobStore;
+import com.example.service.ImageVariantService;
+
+/**
+ * Writes downscaled copies of uploaded images. A variant of
+ * {@code photos/ab/cd/abcd.jpg} at 160 px is stored as
+ * {@code photos/ab/cd/160/abcd.jpg}, so it keeps the file name the database
+ * refers to.
+ */
+@Service
+public class ImageVariantServiceImpl implements ImageVariantService {
+
+	private static final Logger logger = LoggerFactory.getLogger(ImageVariantServiceImpl.class);
+
+	@Autowired
+	private MediaCache mediaCache;
+
+	@Autowired
+	private BlobStore blobStore;
+
+	@Value("${app.media.variants}")
+	private int[] sizes;
+
+	@Value("${app.media.jpeg-quality}")
+	private float jpegQuality;
+
+	@Value("${app.media.max-dimension}")
+	private int maxDimension;
+
+	@Value("${app.media.max-pixels}")
+	private long maxPixels;
+
+	/**
+	 * Decodes the original once and derives each variant from the previous,
+	 * larger one. Sizes the original does not exceed are skipped, they would
+	 * only be upscaled copies.
+	 */
+	@Override
+	@Async("imageExecutor")
+	public CompletableFuture<Void> generateVariants(String original) {
+		var format = format(original);
+		if (format == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		try {
+			var image = decode(original);
+			if (image == null) {
+				return CompletableFuture.completedFuture(null);
+			}
+
+			var descending = Arrays.stream(sizes).boxed().sorted((a, b) -> b - a).mapToInt(Integer::intValue).toArray();
+			var source = image;
+			for (int size : descending) {
+				if (Math.max(image.getWidth(), image.getHeight()) <= size) {
+					continue;
+				}
+				source = scale(source, size, "png".equals(format));
+				write(source, format, variantKey(original, size));
+			}
+			/* Sizes requested before the variants existed were cached from the original. */
+			mediaCache.invalidate(original.substring(original.lastIndexOf('/') + 1));
+		} catch (IOException e) {
+			logger.error("Could not generate the variants of {}: {}", original, e.getMessage());
+		}
+		return CompletableFuture.completedFuture(null);
+	}
+
+	/**
+	 * Reads the size from the header before decoding, files stored before
+	 * uploads were probed are held to the same limits.
+	 */
+	private BufferedImage decode(String original) throws IOException {
+		try (var in = ImageIO.createImageInputStream(blobStore.load(original).getInputStream())) {
+			var readers = in == null ? null : ImageIO.getImageReaders(in);
+			if (readers == null || !readers.hasNext()) {
+				logger.warn("No decoder for {}, serving the original only", original);
+				return null;
+			}
+			var reader = readers.next();
+			try {
+				reader.setInput(in, true, true);
+				var width = reader.getWidth(0);
+				var height = reader.getHeight(0);
+				if (width > maxDimension || height > maxDimension || (long) width * height > maxPixels) {
+					logger.warn("{} is {}x{} pixels, serving the original only", original, width, height);
+					return null;
+				}
+				return reader.read(0);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Returns the smallest variant at least as large as the requested size, or
+	 * the original when there is none yet.
+	 */
+	@Override
+	public String resolve(String original, Integer size) throws IOException {
+		if (size != null) {
+			for (int candidate : Arrays.stream(sizes).sorted().toArray()) {
+				if (candidate >= size) {
+					var variant = variantKey(original, candidate);
+					if (blobStore.exists(variant)) {
+						return variant;
+					}
+				}
+			}
+		}
+		return original;
+	}
+
+	/** The keys every variant would have, whether or not it was generated. */
+	@Override
+	public List<String> variants(String original) {
+		return Arrays.stream(sizes)
+				.mapToObj(size -> variantKey(original, size))
+				.collect(Collectors.toList());
+	}
+
+	private static String variantKey(String original, int size) {
+		var slash = original.lastIndexOf('/');
+		return original.substring(0, slash + 1) + size + original.substring(slash);
+	}
+
+	private static String format(String key) {
+		switch (FilenameUtils.getExtension(key).toLowerCase()) {
+		case "jpg":
+		case "jpeg":
+			return "jpeg";
+		case "png":
+			return "png";
+		case "bmp":
+			return "bmp";
+		default:
+			return null;
+		}
+	}
+
+	private static BufferedImage scale(BufferedImage source, int size, boolean alpha) {
+		var ratio = (double) size / Math.max(source.getWidth(), source.getHeight());
+		var width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+		var height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+
+		var target = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = target.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(source, 0, 0, width, height, null);
+		} finally {
+			g.dispose();
+		}
+		return target;
+	}
+
+	/* Written to a temporary file then stored, so a reader never sees a partial file. */
+	private void write(BufferedImage image, String format, String target) throws IOException {
+		var tmp = blobStore.createTempFile();
+
+		var writer = ImageIO.getImageWritersByFormatName(format).next();
+		try (ImageOutputStream out = ImageIO.createImageOutputStream(tmp.toFile())) {
+			writer.setOutput(out);
+			var param = writer.getDefaultWriteParam();
+			if ("jpeg".equals(format)) {
+				param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+				param.setCompressionQuality(jpegQuality);
+			}
+			writer.write(null, new IIOImage(image, null, null), param);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(tmp);
+			throw e;
+		} finally {
+			writer.dispose();
+		}
+		blobStore.put(target, tmp, ImageProbe.mediaType(FilenameUtils.getExtension(target).toLowerCase()));
+	}
+}
@@ -0,0 +1,164 @@
+package com.example.service.impl;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import com.example.service.BlobStore;
+
+/**
+ * Keeps uploads in a directory of the local file system, {@code uploads} by
+ * default. Only fit for a single node, unless the directory is shared. Files
+ * written before the sharded layout still sit directly in their directory and
+ * are found there until {@link #migrateLayout} has moved them.
+ */
+@Service
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "local", matchIfMissing = true)
+public class LocalBlobStore implements BlobStore {
+
+	@Value("${app.storage.local.root}")
+	private Path root;
+
+	private Path staging;
+
+	@PostConstruct
+	public void init() throws IOException {
+		root = root.toAbsolutePath().normalize();
+		/* In the same file system as the uploads, so that storing a file is a rename. */
+		staging = Files.createDirectories(root.resolve(".staging"));
+	}
+
+	@Override
+	public Path createTempFile() throws IOException {
+		return Files.createTempFile(staging, "upload-", ".tmp");
+	}
+
+	@Override
+	public void put(String key, Path file, String mediaType) throws IOException {
+		try {
+			var target = path(key);
+			Files.createDirectories(target.getParent());
+			Files.move(file, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Override
+	public boolean exists(String key) throws IOException {
+		return Files.exists(locate(key));
+	}
+
+	@Override
+	public Resource load(String key) throws IOException {
+		var file = locate(key);
+		if (!Files.isReadable(file)) {
+			throw new FileNotFoundException("Optional file " + key + " was not found.");
+		}
+		return new FileSystemResource(file);
+	}
+
+	@Override
+	public Optional<URI> presign(String key) {
+		return Optional.empty();
+	}
+
+	@Override
+	public void delete(String key) throws IOException {
+		Files.deleteIfExists(locate(key));
+	}
+
+	@Override
+	public void list(String prefix, Visitor visitor) throws IOException {
+		var directory = path(prefix);
+		if (!Files.isDirectory(directory)) {
+			return;
+		}
+		try (Stream<Path> walk = Files.walk(directory)) {
+			for (var it = walk.filter(Files::isRegularFile).iterator(); it.hasNext();) {
+				var file = it.next();
+				visitor.visit(key(file), Files.getLastModifiedTime(file).toMillis());
+			}
+		}
+	}
+
+	/* Moves files of the directory and their resized variants, the numbered subdirectories, to the sharded layout. */
+	@Override
+	public int migrateLayout(String directory, int limit) throws IOException {
+		var flat = path(directory);
+		if (limit <= 0 || !Files.isDirectory(flat)) {
+			return 0;
+		}
+		List<Path> batch;
+		List<Path> sizes;
+		try (Stream<Path> list = Files.list(flat)) {
+			batch = list.filter(Files::isRegularFile)
+					.filter(f -> !f.getFileName().toString().endsWith(".tmp"))
+					.filter(f -> f.getFileName().toString().length() >= 4)
+					.limit(limit)
+					.collect(Collectors.toList());
+		}
+		try (Stream<Path> list = Files.list(flat)) {
+			sizes = list.filter(Files::isDirectory)
+					.filter(d -> d.getFileName().toString().matches("\\d+"))
+					.collect(Collectors.toList());
+		}
+
+		for (var original : batch) {
+			var name = original.getFileName().toString();
+			var target = path(FileStorageServiceImpl.key(directory, name));
+			Files.createDirectories(target.getParent());
+			for (var size : sizes) {
+				var variant = size.resolve(name);
+				if (Files.exists(variant)) {
+					var moved = target.resolveSibling(size.getFileName()).resolve(name);
+					Files.createDirectories(moved.getParent());
+					Files.move(variant, moved, StandardCopyOption.ATOMIC_MOVE);
+				}
+			}
+			Files.move(original, target, StandardCopyOption.ATOMIC_MOVE);
+		}
+		return batch.size();
+	}
+
+	private Path path(String key) throws FileNotFoundException {
+		var path = root.resolve(key).normalize();
+		if (!path.startsWith(root)) {
+			throw new FileNotFoundException("Optional file " + key + " was not found.");
+		}
+		return path;
+	}
+
+	private String key(Path file) {
+		return root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+	}
+
+	/* photos/ab/cd/160/abcd.jpg was photos/160/abcd.jpg before the sharded layout. */
+	private Path locate(String key) throws FileNotFoundException {
+		var path = path(key);
+		if (Files.exists(path)) {
+			return path;
+		}
+		var segments = key.split("/");
+		if (segments.length < 4) {
+			return path;
+		}
+		var flat = path(segments[0] + '/' + String.join("/", List.of(segments).subList(3, segments.length)));
+		return Files.exists(flat) ? flat : path;
+	}
+}
@@ -0,0 +1,251 @@
+package com.example.service.impl;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.rest.dao.OutboxEmailRepository;
+import com.example.rest.model.OutboxEmail;
+import com.example.service.MailOutbox;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Transactional outbox for the emails sent by the application. Messages are
+ * stored with the data they refer to and sent later by {@link #dispatch()},
+ * over one SMTP connection kept open between batches. A failed message is
+ * retried with an exponential backoff until it runs out of attempts.
+ */
+@Service
+public class MailOutboxImpl implements MailOutbox {
+
+	private static final Logger logger = LoggerFactory.getLogger(MailOutboxImpl.class);
+
+	@Autowired
+	private OutboxEmailRepository outboxRepository;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private JavaMailSenderImpl mailSender;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${mail.outbox.batch-size}")
+	private int batchSize;
+
+	@Value("${mail.outbox.lease}")
+	private Duration lease;
+
+	@Value("${mail.outbox.backoff}")
+	private Duration backoff;
+
+	@Value("${mail.outbox.max-backoff}")
+	private Duration maxBackoff;
+
+	@Value("${mail.outbox.max-attempts}")
+	private int maxAttempts;
+
+	@Value("${mail.outbox.idle-timeout}")
+	private Duration idleTimeout;
+
+	@Value("${mail.outbox.smtp-timeout}")
+	private Duration smtpTimeout;
+
+	private Transport transport;
+	private long lastUsed;
+
+	private Counter sentCounter;
+	private Counter failedCounter;
+	private Timer batchTimer;
+	private DistributionSummary batchSizes;
+
+	@PostConstruct
+	public void init() {
+		sentCounter = Counter.builder("mail.outbox.sent").register(meterRegistry);
+		failedCounter = Counter.builder("mail.outbox.failed").register(meterRegistry);
+		batchTimer = Timer.builder("mail.outbox.batch").register(meterRegistry);
+		batchSizes = DistributionSummary.builder("mail.outbox.batch.size").register(meterRegistry);
+
+		/* Without these a server that stops answering blocks the scheduler thread for good. */
+		var protocol = protocol();
+		var properties = mailSender.getJavaMailProperties();
+		properties.putIfAbsent("mail." + protocol + ".connectiontimeout", String.valueOf(smtpTimeout.toMillis()));
+		properties.putIfAbsent("mail." + protocol + ".timeout", String.valueOf(smtpTimeout.toMillis()));
+		properties.putIfAbsent("mail." + protocol + ".writetimeout", String.valueOf(smtpTimeout.toMillis()));
+		mailSender.setJavaMailProperties(properties);
+	}
+
+	@Override
+	@Transactional(propagation = Propagation.MANDATORY)
+	public void enqueue(SimpleMailMessage message) {
+		for (String recipient : message.getTo()) {
+			var email = new OutboxEmail();
+			email.setSender(message.getFrom());
+			email.setRecipient(recipient);
+			email.setSubject(message.getSubject());
+			email.setBody(message.getText());
+			email.setNextAttempt(new Timestamp(System.currentTimeMillis()));
+			outboxRepository.save(email);
+		}
+	}
+
+	/**
+	 * Claims one batch of due emails and sends it. Claimed rows are leased so
+	 * that no other dispatcher picks them up while they are being sent. When
+	 * the connection fails, the emails not tried yet are put off by the
+	 * backoff and the drain stops until the next poll.
+	 *
+	 * @return the number of emails claimed, 0 when nothing was due or the
+	 *         connection failed
+	 */
+	@Override
+	public synchronized int dispatch() {
+		var now = System.currentTimeMillis();
+		List<OutboxEmail> batch = transactionTemplate.execute(status -> {
+			var due = outboxRepository.lockDue(new Timestamp(now), batchSize);
+			if (!due.isEmpty()) {
+				outboxRepository.lease(ids(due), new Timestamp(now + lease.toMillis()));
+			}
+			return due;
+		});
+
+		if (batch == null || batch.isEmpty()) {
+			closeIfIdle();
+			return 0;
+		}
+
+		var start = System.nanoTime();
+		var sent = new ArrayList<Long>();
+		var failed = 0;
+		var connectionLost = false;
+
+		for (var i = 0; i < batch.size(); i++) {
+			var email = batch.get(i);
+			try {
+				send(email);
+				sent.add(email.getId());
+			} catch (SendFailedException e) {
+				failed(email, e);
+				failed++;
+			} catch (MessagingException e) {
+				/*
+				 * The connection itself is unusable: only this email is charged an
+				 * attempt, the rest of the batch was never tried and waits for the
+				 * backoff without losing an attempt.
+				 */
+				closeTransport();
+				failed(email, e);
+				failed++;
+				connectionLost = true;
+				var untried = batch.subList(i + 1, batch.size());
+				if (!untried.isEmpty()) {
+					outboxRepository.lease(ids(untried), new Timestamp(System.currentTimeMillis() + backoff.toMillis()));
+					logger.warn("SMTP connection lost, {} emails put off by {}", untried.size(), backoff);
+				}
+				break;
+			}
+		}
+
+		if (!sent.isEmpty()) {
+			outboxRepository.deleteSent(sent);
+		}
+		sentCounter.increment(sent.size());
+		failedCounter.increment(failed);
+		batchSizes.record(batch.size());
+		batchTimer.record(Duration.ofNanos(System.nanoTime() - start));
+		logger.info("Mail outbox batch of {} emails dispatched, {} sent, {} failed", batch.size(), sent.size(), failed);
+		return connectionLost ? 0 : batch.size();
+	}
+
+	@PreDestroy
+	public synchronized void closeTransport() {
+		if (transport != null) {
+			try {
+				transport.close();
+			} catch (MessagingException e) {
+				logger.debug("Failed to close the SMTP transport", e);
+			}
+			transport = null;
+		}
+	}
+
+	private void send(OutboxEmail email) throws MessagingException {
+		var message = new MimeMessage(mailSender.getSession());
+		var helper = new MimeMessageHelper(message, "UTF-8");
+		helper.setFrom(email.getSender());
+		helper.setTo(email.getRecipient());
+		helper.setSubject(email.getSubject());
+		helper.setText(email.getBody());
+		message.setSentDate(new Date());
+		message.saveChanges();
+
+		transport().sendMessage(message, message.getAllRecipients());
+		lastUsed = System.currentTimeMillis();
+	}
+
+	private Transport transport() throws MessagingException {
+		if (transport == null || !transport.isConnected()) {
+			closeTransport();
+			var connection = mailSender.getSession().getTransport(protocol());
+			connection.connect(mailSender.getHost(), mailSender.getPort(), mailSender.getUsername(), mailSender.getPassword());
+			transport = connection;
+		}
+		return transport;
+	}
+
+	private String protocol() {
+		return mailSender.getProtocol() == null ? "smtp" : mailSender.getProtocol();
+	}
+
+	private void closeIfIdle() {
+		if (transport != null && System.currentTimeMillis() - lastUsed > idleTimeout.toMillis()) {
+			closeTransport();
+		}
+	}
+
+	private void failed(OutboxEmail email, MessagingException e) {
+		var attempts = email.getAttempts() + 1;
+		var dead = attempts >= maxAttempts;
+		var delay = Math.min(backoff.toMillis() << Math.min(attempts - 1, 20), maxBackoff.toMillis());
+		var error = String.valueOf(e.getMessage());
+
+		outboxRepository.markFailed(email.getId(), new Timestamp(System.currentTimeMillis() + delay),
+				error.length() > 512 ? error.substring(0, 512) : error, dead);
+		if (dead) {
+			logger.error("Email {} to {} abandoned after {} attempts: {}", email.getId(), email.getRecipient(), attempts, error);
+		}
+	}
+
+	private static List<Long> ids(List<OutboxEmail> emails) {
+		return emails.isEmpty() ? Collections.emptyList() : emails.stream().map(OutboxEmail::getId).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,261 @@
+package com.example.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import com.example.service.Media;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Small images kept in direct buffers, keyed by directory, file name and
+ * requested size. A hit skips the file system entirely. The cache is bounded
+ * by the bytes it holds and uses Caffeine's W-TinyLFU admission, so a burst of
+ * one-off photos does not push out the avatars every page shows. Concurrent
+ * misses on a key load it once. Evicted buffers are only freed by the garbage
+ * collector, so the direct memory allocated and not yet collected is tracked
+ * and capped at twice the cache size: past that, files are served from disk
+ * until buffers are collected. Hit and miss counts are published with the tag
+ * {@code cache=media}, the resident size as {@code media.cache.resident} and
+ * the allocated size as {@code media.cache.allocated}.
+ */
+@Component
+public class MediaCache {
+
+	@FunctionalInterface
+	public interface Loader {
+		Media load() throws IOException;
+	}
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${app.media.cache.max-size}")
+	private DataSize maxSize;
+
+	@Value("${app.media.cache.max-entry-size}")
+	private DataSize maxEntrySize;
+
+	private static final Cleaner CLEANER = Cleaner.create();
+
+	private Cache<Key, Media> cache;
+
+	/* Cached keys by file name, so that a file is invalidated without scanning the cache. */
+	private final Map<String, Set<Key>> keysByFilename = new ConcurrentHashMap<>();
+
+	private final AtomicLong allocated = new AtomicLong();
+
+	@PostConstruct
+	public void init() {
+		cache = Caffeine.newBuilder()
+				.maximumWeight(maxSize.toBytes())
+				.<Key, Media>weigher((key, value) -> ((CachedResource) value.getResource()).buffer.capacity())
+				.evictionListener((Key key, Media value, RemovalCause cause) -> unindex(key))
+				.recordStats()
+				.build();
+		CaffeineCacheMetrics.monitor(meterRegistry, cache, "media");
+		Gauge.builder("media.cache.resident", cache, c -> c.policy().eviction().get().weightedSize().orElse(0))
+				.baseUnit("bytes")
+				.register(meterRegistry);
+		Gauge.builder("media.cache.allocated", allocated, AtomicLong::get)
+				.baseUnit("bytes")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * Returns the cached copy, or the resource from the loader. Files larger
+	 * than the entry limit are returned as is and never cached.
+	 */
+	public Media get(String directory, String filename, Integer size, Loader loader) throws IOException {
+		var key = new Key(directory, filename, size);
+		var uncached = new Media[1];
+		Media cached;
+		try {
+			cached = cache.get(key, k -> {
+				try {
+					var media = loader.load();
+					var resource = media.getResource();
+					var buffer = read(resource);
+					if (buffer == null) {
+						uncached[0] = media;
+						return null;
+					}
+					keysByFilename.compute(filename, (f, keys) -> {
+						keys = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+						keys.add(k);
+						return keys;
+					});
+					return new Media(new CachedResource(buffer, resource.getFilename(), resource.lastModified()), media.isExact());
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return cached != null ? cached : uncached[0];
+	}
+
+	/* Null when the file is too large to cache or the direct memory budget is spent. */
+	private ByteBuffer read(Resource resource) throws IOException {
+		var length = resource.contentLength();
+		if (length > maxEntrySize.toBytes() || !resource.isFile()) {
+			return null;
+		}
+		if (allocated.addAndGet(length) > 2 * maxSize.toBytes()) {
+			allocated.addAndGet(-length);
+			return null;
+		}
+
+		ByteBuffer buffer;
+		try {
+			buffer = ByteBuffer.allocateDirect((int) length);
+		} catch (OutOfMemoryError e) {
+			allocated.addAndGet(-length);
+			return null;
+		}
+		CLEANER.register(buffer, () -> allocated.addAndGet(-length));
+		try (var channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ)) {
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+				// fill
+			}
+		}
+		buffer.flip();
+		return buffer.asReadOnlyBuffer();
+	}
+
+	/** Drops every cached size of a file, once it is deleted or replaced. */
+	public void invalidate(String filename) {
+		var keys = keysByFilename.remove(filename);
+		if (keys != null) {
+			cache.invalidateAll(keys);
+		}
+	}
+
+	private void unindex(Key key) {
+		keysByFilename.computeIfPresent(key.filename, (f, keys) -> {
+			keys.remove(key);
+			return keys.isEmpty() ? null : keys;
+		});
+	}
+
+	/** An image held in memory, served by slicing its buffer. */
+	public static final class CachedResource extends AbstractResource {
+
+		private final ByteBuffer buffer;
+		private final String filename;
+		private final long lastModified;
+
+		private CachedResource(ByteBuffer buffer, String filename, long lastModified) {
+			this.buffer = buffer;
+			this.filename = filename;
+			this.lastModified = lastModified;
+		}
+
+		/** A read-only view positioned at the start of the image. */
+		public ByteBuffer buffer() {
+			return buffer.duplicate();
+		}
+
+		@Override
+		public String getFilename() {
+			return filename;
+		}
+
+		@Override
+		public long contentLength() {
+			return buffer.capacity();
+		}
+
+		@Override
+		public long lastModified() {
+			return lastModified;
+		}
+
+		@Override
+		public boolean exists() {
+			return true;
+		}
+
+		@Override
+		public String getDescription() {
+			return "cached image [" + filename + "]";
+		}
+
+		@Override
+		public InputStream getInputStream() {
+			var view = buffer();
+			return new InputStream() {
+
+				@Override
+				public int read() {
+					return view.hasRemaining() ? view.get() & 0xff : -1;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) {
+					if (!view.hasRemaining()) {
+						return -1;
+					}
+					len = Math.min(len, view.remaining());
+					view.get(b, off, len);
+					return len;
+				}
+			};
+		}
+	}
+
+	private static final class Key {
+
+		private final String directory;
+		private final String filename;
+		private final Integer size;
+
+		private Key(String directory, String filename, Integer size) {
+			this.directory = directory;
+			this.filename = filename;
+			this.size = size;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			var other = (Key) o;
+			return directory.equals(other.directory) && filename.equals(other.filename) && Objects.equals(size, other.size);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(directory, filename, size);
+		}
+	}
+}
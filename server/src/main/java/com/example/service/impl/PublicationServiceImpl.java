@@ -1,31 +1,42 @@
 package com.example.service.impl;
 
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import com.example.rest.dao.CommentRepository;
+import com.example.event.OnPublicationCreatedEvent;
 import com.example.rest.dao.FavoriRepository;
 import com.example.rest.dao.PublicationRepository;
-import com.example.rest.model.Favori;
+import com.example.rest.dao.UserStatsRepository;
 import com.example.rest.model.Publication;
+import com.example.rest.model.User;
+import com.example.service.FileStorageService;
 import com.example.service.PublicationService;
+import com.example.service.StorageCollector;
+import com.example.service.TimelineService;
 import com.example.service.UserService;
+import com.example.service.WriteCoalescer;
+import com.example.web.dto.Cursor;
 import com.example.web.dto.response.PublicationDto;
 import com.example.web.exception.EntityNotFoundException;
 import com.example.web.exception.HttpUnauthorizedException;
-import com.example.web.mappers.MapstructMapper;
 
 @Service
 @Transactional
@@ -36,86 +47,106 @@ public class PublicationServiceImpl implements PublicationService {
 
 	@Autowired
 	private FavoriRepository likeRepository;
+	
+	@Autowired
+	private UserStatsRepository userStatsRepository;
 
 	@Autowired
 	private UserService userService;
 	
 	@Autowired
-	private MapstructMapper mapper;
+	private TimelineService timelineService;
+	
+	@Autowired
+	private WriteCoalescer writeCoalescer;
 	
 	@Autowired
-	private CommentRepository cRepository;
+	private ApplicationEventPublisher eventPublisher;
 	
 	@Autowired
     @Qualifier("mainExecutor") 
     private Executor existingThreadPool; 
+	
+	@Autowired
+	private StorageCollector storageCollector;
 
 	@Override
 	@Async
 	public CompletableFuture<List<PublicationDto>> getUserPublications(String username, Integer pageNo, Integer pageSize, String sortBy) {
 		
 		Pageable paging = PageRequest.of(pageNo, pageSize, Sort.by(sortBy).descending());
+		var currentUser = userService.isAnonymous() ? null : userService.getAuthenticatedUser();
 		var publications = publicationRepository.findAllByUtilisateurUsername(username, paging);
 		
-		return publications.thenApplyAsync(pbs -> 
-			pbs.stream().map(p -> {
-				var pub = mapper.pubToPubDto(p);
-				pub.setLiked(userService.isAnonymous() ? false : likeRepository.isLiked(userService.getAuthenticatedUser(), p));
-				pub.setCountLike(likeRepository.countByPost(p));
-				pub.setCommentsCount(cRepository.countByPost(p));
-				pub.setAuthor(userService.isAnonymous() ? false : userService.getAuthenticatedUser().equals(p.getUtilisateur()));
-				return pub;
-			}).collect(Collectors.toList()), existingThreadPool);
+		return publications.thenApplyAsync(pbs -> enrich(pbs, currentUser), existingThreadPool);
+	}
+	
+	@Override
+	@Async
+	public CompletableFuture<List<PublicationDto>> getUserPublications(String username, Cursor after, Integer pageSize) {
+		
+		var currentUser = userService.isAnonymous() ? null : userService.getAuthenticatedUser();
+		var publications = publicationRepository.findAllByUtilisateurUsernameBefore(username, after.getDate(), after.getId(),
+				PageRequest.of(0, pageSize));
+		
+		return publications.thenApplyAsync(pbs -> enrich(pbs, currentUser), existingThreadPool);
 	}
 	
 
 	@Override
 	@Async
 	public CompletableFuture<List<PublicationDto>> getNewPublications(Integer pageNo, Integer pageSize) {
-		Pageable paging = PageRequest.of(pageNo, pageSize, Sort.by("date").descending());
-		var publications = publicationRepository.findNewPublications(userService.getAuthenticatedUser().getUsername(), paging);
+		var currentUser = userService.getAuthenticatedUser();
+		var publications = timelineService.getTimeline(currentUser, pageNo, pageSize);
+		
+		return CompletableFuture.completedFuture(enrich(publications, currentUser));
+	}
+	
+	@Override
+	@Async
+	public CompletableFuture<List<PublicationDto>> getNewPublications(Cursor after, Integer pageSize) {
+		var currentUser = userService.getAuthenticatedUser();
+		var publications = timelineService.getTimeline(currentUser, after, pageSize);
 		
-		return publications.thenApplyAsync(pbs -> 
-			pbs.stream().map(p -> {
-				var pub = mapper.pubToPubDto(p);
-				pub.setLiked(likeRepository.isLiked(userService.getAuthenticatedUser(), p));
-				pub.setCountLike(likeRepository.countByPost(p));
-				pub.setCommentsCount(cRepository.countByPost(p));
-				pub.setAuthor(userService.isAnonymous() ? false : userService.getAuthenticatedUser().equals(p.getUtilisateur()));
-				return pub;
-			}).collect(Collectors.toList()), existingThreadPool);
+		return CompletableFuture.completedFuture(enrich(publications, currentUser));
 	}
 
 	@Override
 	public void deletePublication(Long id) {
 		
-		if (publicationRepository.deleteByIdAndUtilisateur(id, userService.getAuthenticatedUser()) == 0) {
+		var currentUser = userService.getAuthenticatedUser();
+		var storageKey = publicationRepository.findStorageKeyById(id);
+		timelineService.removePublication(id);
+		if (publicationRepository.deleteByIdAndUtilisateur(id, currentUser) == 0) {
 			throw new HttpUnauthorizedException("La ressource n'existe pas ou vous n'avez pas la permission de la modifier");
-		}	
+		}
+		userStatsRepository.increment(currentUser.getId(), -1, 0, 0);
+		storageKey.ifPresent(key -> storageCollector.release(FileStorageService.PHOTOS, List.of(key)));
 	}
 
 	@Override
 	public Publication createPost(String generatedName, String description) {
 		var post = new Publication();
-		post.setPhoto("http://localhost:8081/api/publication/view/" + generatedName);
+		post.setStorageKey(generatedName);
 		post.setDate(new Timestamp(System.currentTimeMillis()));
 		post.setDescription(description);
 		post.setUtilisateur(userService.getAuthenticatedUser());
-		return publicationRepository.save(post);
+		var saved = publicationRepository.save(post);
+		userStatsRepository.increment(saved.getUtilisateur().getId(), 1, 0, 0);
+		eventPublisher.publishEvent(new OnPublicationCreatedEvent(saved));
+		return saved;
 	}
 	
 
 	@Override
 	public PublicationDto getPublicationByID(Long id) {
-		var optional = publicationRepository.findById(id);
+		var optional = publicationRepository.findDtoById(id);
 
 		if (optional.isPresent()) {
-			var publication = optional.get();
-			var result = mapper.pubToPubDto(publication);
-			result.setLiked(userService.isAnonymous() ? false : likeRepository.isLiked(userService.getAuthenticatedUser(), publication));
-			result.setCountLike(publication.getLikes().size());
-			result.setCommentsCount(publication.getComments().size());
-			result.setAuthor(userService.isAnonymous() ? false : userService.getAuthenticatedUser().equals(publication.getUtilisateur()));
+			var result = optional.get();
+			var currentUser = userService.isAnonymous() ? null : userService.getAuthenticatedUser();
+			result.setLiked(currentUser != null && !likeRepository.findLikedPostIds(currentUser, List.of(id)).isEmpty());
+			result.setAuthor(currentUser != null && currentUser.getUsername().equals(result.getUtilisateur().getUsername()));
 			return result;
 		} 
 		else {
@@ -123,38 +154,58 @@ public class PublicationServiceImpl implements PublicationService {
 		}
 	}
 	
-	@Async
 	@Override
 	public void like(Long id) {
-		var post = new Publication();
-		post.setId(id);		
-		var favori = new Favori();
-		favori.setPost(post);
-		favori.setUtilisateur(userService.getAuthenticatedUser());
-		likeRepository.save(favori);
+		writeCoalescer.like(userService.getAuthenticatedUser().getId(), id);
 	}
 
-	@Async
 	@Override
 	public void dislike(Long id) {
-			var currentUser = userService.getAuthenticatedUser();
-			likeRepository.dislike(currentUser, id);
+		writeCoalescer.dislike(userService.getAuthenticatedUser().getId(), id);
 	}
 	
 	@Async
 	@Override
 	public CompletableFuture<List<PublicationDto>> getFavorites(Integer pageNo, Integer pageSize, String sortBy) {
 		Pageable paging = PageRequest.of(pageNo, pageSize, Sort.by(sortBy).descending());
-		var favorites = likeRepository.findAllByUtilisateurUsername(userService.getAuthenticatedUser().getUsername(), paging);
+		var currentUser = userService.getAuthenticatedUser();
+		var favorites = likeRepository.findAllByUtilisateurUsername(currentUser.getUsername(), paging);
+		
+		return favorites.thenApplyAsync(favs -> enrich(favs, currentUser), existingThreadPool);
+	}
+	
+	@Async
+	@Override
+	public CompletableFuture<List<PublicationDto>> getFavorites(Cursor after, Integer pageSize) {
+		var currentUser = userService.getAuthenticatedUser();
+		var favorites = likeRepository.findAllByUtilisateurUsernameBefore(currentUser.getUsername(), after.getId(),
+				PageRequest.of(0, pageSize));
+		
+		return favorites.thenApplyAsync(favs -> enrich(favs, currentUser), existingThreadPool);
+	}
+	
+	/**
+	 * Completes a page of projected publications with the viewer specific flags.
+	 * The liked flags are fetched for the whole page with a single IN query
+	 * instead of one lookup per row.
+	 *
+	 * @param publications the page to complete
+	 * @param currentUser  the viewer, or null when anonymous
+	 * @return the publications, in page order
+	 */
+	private List<PublicationDto> enrich(Slice<PublicationDto> publications, User currentUser) {
+		
+		if (!publications.hasContent()) {
+			return new ArrayList<>();
+		}
+		
+		var ids = publications.stream().map(PublicationDto::getId).collect(Collectors.toList());
+		Set<Long> liked = currentUser == null ? Collections.emptySet() : new HashSet<>(likeRepository.findLikedPostIds(currentUser, ids));
 		
-		return favorites.thenApplyAsync(favs -> 
-			 favs.stream().map(f -> {
-				var fav = mapper.pubToPubDto(f.getPost());
-				fav.setLiked(likeRepository.isLiked(userService.getAuthenticatedUser(), f.getPost()));
-				fav.setCountLike(likeRepository.countByPost(f.getPost()));
-				fav.setCommentsCount(cRepository.countByPost(f.getPost()));
-				fav.setAuthor(userService.isAnonymous() ? false : userService.getAuthenticatedUser().equals(f.getUtilisateur()));
-				return fav;
-			}).collect(Collectors.toList()), existingThreadPool);
+		return publications.stream().map(pub -> {
+			pub.setLiked(liked.contains(pub.getId()));
+			pub.setAuthor(currentUser != null && currentUser.getUsername().equals(pub.getUtilisateur().getUsername()));
+			return pub;
+		}).collect(Collectors.toList());
 	}
 }
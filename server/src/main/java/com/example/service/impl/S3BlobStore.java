@@ -0,0 +1,310 @@
+package com.example.service.impl;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Optional;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import com.example.service.BlobStore;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+/**
+ * Keeps uploads in an S3 compatible bucket, so that any number of nodes share
+ * them. Clients download from the bucket through presigned URLs and the bytes
+ * never pass through the application. Files above the part size are sent as a
+ * multipart upload.
+ */
+@Service
+@ConditionalOnProperty(name = "app.storage.type", havingValue = "s3")
+public class S3BlobStore implements BlobStore {
+
+	private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+	@Value("${app.storage.s3.bucket}")
+	private String bucket;
+
+	@Value("${app.storage.s3.region}")
+	private String region;
+
+	@Value("${app.storage.s3.endpoint:}")
+	private String endpoint;
+
+	@Value("${app.storage.s3.path-style-access}")
+	private boolean pathStyleAccess;
+
+	@Value("${app.storage.s3.access-key:}")
+	private String accessKey;
+
+	@Value("${app.storage.s3.secret-key:}")
+	private String secretKey;
+
+	@Value("${app.storage.s3.presign-ttl}")
+	private Duration presignTtl;
+
+	@Value("${app.storage.s3.part-size}")
+	private DataSize partSize;
+
+	private S3Client client;
+
+	private S3Presigner presigner;
+
+	@PostConstruct
+	public void init() {
+		AwsCredentialsProvider credentials = accessKey.isEmpty()
+				? DefaultCredentialsProvider.create()
+				: StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+		var configuration = S3Configuration.builder().pathStyleAccessEnabled(pathStyleAccess).build();
+		var clientBuilder = S3Client.builder()
+				.region(Region.of(region))
+				.credentialsProvider(credentials)
+				.serviceConfiguration(configuration);
+		var presignerBuilder = S3Presigner.builder()
+				.region(Region.of(region))
+				.credentialsProvider(credentials)
+				.serviceConfiguration(configuration);
+		if (!endpoint.isEmpty()) {
+			clientBuilder.endpointOverride(URI.create(endpoint));
+			presignerBuilder.endpointOverride(URI.create(endpoint));
+		}
+		client = clientBuilder.build();
+		presigner = presignerBuilder.build();
+	}
+
+	@PreDestroy
+	public void close() {
+		presigner.close();
+		client.close();
+	}
+
+	@Override
+	public Path createTempFile() throws IOException {
+		return Files.createTempFile("upload-", ".tmp");
+	}
+
+	@Override
+	public void put(String key, Path file, String mediaType) throws IOException {
+		try {
+			var size = Files.size(file);
+			var contentType = mediaType != null ? mediaType : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+			if (size <= partSize.toBytes()) {
+				client.putObject(b -> b.bucket(bucket).key(key).contentType(contentType).cacheControl(CACHE_CONTROL),
+						RequestBody.fromFile(file));
+			} else {
+				putMultipart(key, file, size, contentType);
+			}
+		} catch (SdkException e) {
+			throw new IOException("Could not store " + key + ": " + e.getMessage(), e);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/*
+	 * Parts are streamed from their range of the file, nothing is buffered. Aborted
+	 * on failure, otherwise the parts already sent would be kept and billed.
+	 */
+	private void putMultipart(String key, Path file, long size, String contentType) throws IOException {
+		var uploadId = client.createMultipartUpload(b -> b.bucket(bucket).key(key)
+				.contentType(contentType).cacheControl(CACHE_CONTROL)).uploadId();
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			var parts = new ArrayList<CompletedPart>();
+			var number = 1;
+			for (long offset = 0; offset < size; offset += partSize.toBytes(), number++) {
+				var partNumber = number;
+				var start = offset;
+				var length = Math.min(partSize.toBytes(), size - start);
+				var body = RequestBody.fromContentProvider(() -> new PartInputStream(channel, start, length), length, contentType);
+				var etag = client.uploadPart(b -> b.bucket(bucket).key(key).uploadId(uploadId).partNumber(partNumber),
+						body).eTag();
+				parts.add(CompletedPart.builder().partNumber(partNumber).eTag(etag).build());
+			}
+			client.completeMultipartUpload(b -> b.bucket(bucket).key(key).uploadId(uploadId)
+					.multipartUpload(m -> m.parts(parts)));
+		} catch (IOException | RuntimeException e) {
+			client.abortMultipartUpload(b -> b.bucket(bucket).key(key).uploadId(uploadId));
+			throw e;
+		}
+	}
+
+	@Override
+	public boolean exists(String key) throws IOException {
+		return head(key) != null;
+	}
+
+	@Override
+	public Resource load(String key) throws IOException {
+		var head = head(key);
+		if (head == null) {
+			throw new FileNotFoundException("Optional file " + key + " was not found.");
+		}
+		return new S3Resource(key, head.contentLength(), head.lastModified().toEpochMilli());
+	}
+
+	private HeadObjectResponse head(String key) throws IOException {
+		try {
+			return client.headObject(b -> b.bucket(bucket).key(key));
+		} catch (S3Exception e) {
+			if (e.statusCode() == 404) {
+				return null;
+			}
+			throw new IOException("Could not read " + key + ": " + e.getMessage(), e);
+		} catch (SdkException e) {
+			throw new IOException("Could not read " + key + ": " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public Optional<URI> presign(String key) {
+		var request = presigner.presignGetObject(b -> b.signatureDuration(presignTtl)
+				.getObjectRequest(o -> o.bucket(bucket).key(key)));
+		try {
+			return Optional.of(request.url().toURI());
+		} catch (URISyntaxException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void delete(String key) throws IOException {
+		try {
+			client.deleteObject(b -> b.bucket(bucket).key(key));
+		} catch (SdkException e) {
+			throw new IOException("Could not delete " + key + ": " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void list(String prefix, Visitor visitor) throws IOException {
+		try {
+			for (var object : client.listObjectsV2Paginator(b -> b.bucket(bucket).prefix(prefix)).contents()) {
+				visitor.visit(object.key(), object.lastModified().toEpochMilli());
+			}
+		} catch (SdkException e) {
+			throw new IOException("Could not list " + prefix + ": " + e.getMessage(), e);
+		}
+	}
+
+	/* Reads a range of the file with positional reads, so a retried part starts over from a new stream. */
+	private static final class PartInputStream extends InputStream {
+
+		private final FileChannel channel;
+		private long position;
+		private long remaining;
+
+		private PartInputStream(FileChannel channel, long position, long length) {
+			this.channel = channel;
+			this.position = position;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			var b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			var read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+			if (read > 0) {
+				position += read;
+				remaining -= read;
+			}
+			return read;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(remaining, Integer.MAX_VALUE);
+		}
+	}
+
+	/** An object of the bucket, downloaded when its stream is opened. */
+	private final class S3Resource extends AbstractResource {
+
+		private final String key;
+		private final long length;
+		private final long lastModified;
+
+		private S3Resource(String key, long length, long lastModified) {
+			this.key = key;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		public String getFilename() {
+			return key.substring(key.lastIndexOf('/') + 1);
+		}
+
+		@Override
+		public long contentLength() {
+			return length;
+		}
+
+		@Override
+		public long lastModified() {
+			return lastModified;
+		}
+
+		@Override
+		public boolean exists() {
+			return true;
+		}
+
+		@Override
+		public String getDescription() {
+			return "s3://" + bucket + "/" + key;
+		}
+
+		@Override
+		public InputStream getInputStream() throws IOException {
+			try {
+				return client.getObject(b -> b.bucket(bucket).key(key));
+			} catch (S3Exception e) {
+				if (e.statusCode() == 404) {
+					throw new FileNotFoundException("Optional file " + key + " was not found.");
+				}
+				throw new IOException("Could not read " + key + ": " + e.getMessage(), e);
+			} catch (SdkException e) {
+				throw new IOException("Could not read " + key + ": " + e.getMessage(), e);
+			}
+		}
+	}
+}
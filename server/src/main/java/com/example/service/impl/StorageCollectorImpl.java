@@ -0,0 +1,160 @@
+package com.example.service.impl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.rest.dao.OrphanedFileRepository;
+import com.example.rest.dao.StoredBlobRepository;
+import com.example.rest.model.OrphanedFile;
+import com.example.rest.model.StoredBlob;
+import com.example.rest.model.User;
+import com.example.service.FileStorageService;
+import com.example.service.StorageCollector;
+
+/**
+ * Keeps the reference counts of uploaded files and deletes them from the
+ * journal of files that lost a reference, instead of rediscovering them by
+ * scanning the whole upload tree. Entries wait for a grace period, then are
+ * processed a bounded batch per run so that the work is spread over the day.
+ * A file is only deleted while its count is zero, under the lock of its row.
+ * Entries whose file could not be deleted stay in the journal for a later run.
+ */
+@Service
+public class StorageCollectorImpl implements StorageCollector {
+
+	private static final Logger logger = LoggerFactory.getLogger(StorageCollectorImpl.class);
+
+	@Autowired
+	private OrphanedFileRepository orphanedFileRepository;
+
+	@Autowired
+	private StoredBlobRepository storedBlobRepository;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private FileStorageService storageService;
+
+	@Value("${app.media.gc.grace}")
+	private Duration grace;
+
+	@Value("${app.media.gc.batch-size}")
+	private int batchSize;
+
+	/**
+	 * Counts a new reference to a file. Called in the transaction that stores
+	 * the reference, so that the count is rolled back with it. The media type
+	 * is recorded with the first reference.
+	 */
+	@Override
+	@Transactional(propagation = Propagation.MANDATORY)
+	public void acquire(String directory, String key, String mediaType) {
+		storedBlobRepository.acquire(StoredBlob.path(directory, key), mediaType);
+	}
+
+	/**
+	 * Drops one reference per key, a key listed twice losing two, and journals
+	 * the keys for the collector to check.
+	 */
+	@Override
+	@Transactional
+	public void release(String directory, Collection<String> keys) {
+		var counts = keys.stream()
+				.filter(key -> key != null && !User.DEFAULT_AVATAR.equals(key))
+				.collect(Collectors.groupingBy(key -> StoredBlob.path(directory, key), Collectors.summingInt(key -> 1)));
+		counts.entrySet().stream()
+				.collect(Collectors.groupingBy(Map.Entry::getValue, Collectors.mapping(Map.Entry::getKey, Collectors.toList())))
+				.forEach((count, paths) -> storedBlobRepository.release(paths, count));
+		journal(directory, keys);
+	}
+
+	/**
+	 * Journals keys in their own transaction, so that a failed upload is
+	 * recorded even though the surrounding transaction rolls back.
+	 */
+	@Override
+	@Transactional(propagation = Propagation.REQUIRES_NEW)
+	public void orphaned(String directory, Collection<String> keys) {
+		journal(directory, keys);
+	}
+
+	private void journal(String directory, Collection<String> keys) {
+		var now = new Timestamp(System.currentTimeMillis());
+		orphanedFileRepository.saveAll(keys.stream()
+				.filter(key -> key != null && !User.DEFAULT_AVATAR.equals(key))
+				.distinct()
+				.map(key -> new OrphanedFile(directory, key, now))
+				.collect(Collectors.toList()));
+	}
+
+	@Override
+	public int collect() {
+		var due = orphanedFileRepository.findDue(new Timestamp(System.currentTimeMillis() - grace.toMillis()),
+				PageRequest.of(0, batchSize));
+		if (due.isEmpty()) {
+			return 0;
+		}
+
+		var deleted = 0;
+		var processed = new ArrayList<Long>();
+		var failed = new ArrayList<Long>();
+		for (var file : due) {
+			try {
+				if (Boolean.TRUE.equals(transactionTemplate.execute(status -> delete(file)))) {
+					deleted++;
+				}
+				processed.add(file.getId());
+			} catch (UncheckedIOException e) {
+				logger.error("Could not delete the file {}: {}", file.getStorageKey(), e.getMessage());
+				failed.add(file.getId());
+			}
+		}
+		if (!processed.isEmpty()) {
+			orphanedFileRepository.deleteAllByIdInBatch(processed);
+		}
+		/* Failed entries are journaled again as of now and retried once the grace period has passed. */
+		if (!failed.isEmpty()) {
+			orphanedFileRepository.postpone(failed, new Timestamp(System.currentTimeMillis()));
+		}
+		logger.info("Storage collection: {} journal entries processed, {} files deleted, {} failed", due.size(), deleted,
+				failed.size());
+		return due.size();
+	}
+
+	/**
+	 * Deletes the file and its row if nothing references it. The row stays
+	 * locked meanwhile, so an identical upload waits and then stores the file
+	 * again.
+	 */
+	private boolean delete(OrphanedFile file) {
+		var path = StoredBlob.path(file.getDirectory(), file.getStorageKey());
+		var blob = storedBlobRepository.lock(path);
+		if (blob.isPresent() && blob.get().getRefCount() > 0) {
+			return false;
+		}
+		try {
+			storageService.delete(file.getDirectory(), file.getStorageKey());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		blob.ifPresent(storedBlobRepository::delete);
+		return true;
+	}
+}
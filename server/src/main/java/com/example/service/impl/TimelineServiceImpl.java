@@ -0,0 +1,137 @@
+package com.example.service.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.rest.dao.FollowerRepository;
+import com.example.rest.dao.PublicationRepository;
+import com.example.rest.dao.TimelineRepository;
+import com.example.rest.dao.UserRepository;
+import com.example.rest.model.Publication;
+import com.example.rest.model.User;
+import com.example.service.TimelineService;
+import com.example.web.dto.Cursor;
+import com.example.web.dto.response.PublicationDto;
+
+/**
+ * Home timeline backed by the timeline table. Posts are pushed to the followers
+ * of their author when they are created, except for authors whose audience is
+ * above the fan-out limit: those are flagged as pull authors and their posts
+ * are merged in at read time instead.
+ */
+@Service
+@Transactional
+public class TimelineServiceImpl implements TimelineService {
+
+	private static final Logger logger = LoggerFactory.getLogger(TimelineServiceImpl.class);
+	private static final Comparator<PublicationDto> NEWEST_FIRST = Comparator
+			.comparing(PublicationDto::getDate, Comparator.nullsLast(Comparator.reverseOrder()))
+			.thenComparing(PublicationDto::getId, Comparator.reverseOrder());
+
+	@Autowired
+	private TimelineRepository timelineRepository;
+
+	@Autowired
+	private PublicationRepository publicationRepository;
+
+	@Autowired
+	private FollowerRepository followerRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Value("${timeline.fanout.max-followers}")
+	private long maxFollowers;
+
+	@Value("${timeline.backfill.size}")
+	private int backfillSize;
+
+	@Override
+	public void fanOut(Publication publication) {
+		var author = publication.getUtilisateur();
+
+		if (author.isTimelinePull()) {
+			return;
+		}
+
+		if (followerRepository.countByToId(author.getId()) > maxFollowers) {
+			logger.info("User {} exceeds the fan-out limit, switching to the pull timeline", author.getId());
+			userRepository.setTimelinePull(author.getId());
+			return;
+		}
+		timelineRepository.fanOut(publication.getId(), author.getId(), publication.getDate());
+	}
+
+	@Override
+	public void backfill(Long userId, Long authorId) {
+		timelineRepository.backfill(userId, authorId, backfillSize);
+	}
+
+	@Override
+	public void removeAuthor(Long userId, Long authorId) {
+		timelineRepository.removeAuthor(userId, authorId);
+	}
+
+	@Override
+	public void removePublication(Long id) {
+		timelineRepository.deleteByPostId(id);
+	}
+
+	@Override
+	public void removeUser(User user) {
+		timelineRepository.deleteByUser(user.getId());
+	}
+
+	/**
+	 * Pages through the merged timeline by offset in the database, which only
+	 * returns the ids of the page; the posts are then read by id.
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Slice<PublicationDto> getTimeline(User user, int pageNo, int pageSize) {
+		var offset = pageNo * pageSize;
+		var ids = timelineRepository.findTimelineIds(user.getId(), offset, pageSize + 1, offset + pageSize + 1).stream()
+				.map(Number::longValue)
+				.collect(Collectors.toList());
+		var hasNext = ids.size() > pageSize;
+		if (hasNext) {
+			ids = ids.subList(0, pageSize);
+		}
+
+		var content = ids.isEmpty() ? List.<PublicationDto>of() : publicationRepository.findDtosByIds(ids);
+		return new SliceImpl<>(new ArrayList<>(content), PageRequest.of(pageNo, pageSize), hasNext);
+	}
+
+	@Override
+	@Transactional(readOnly = true)
+	public Slice<PublicationDto> getTimeline(User user, Cursor after, int pageSize) {
+		var window = PageRequest.of(0, pageSize + 1);
+
+		List<PublicationDto> merged = new ArrayList<>(
+				timelineRepository.findTimelineBefore(user.getId(), after.getDate(), after.getId(), window));
+		var pulled = publicationRepository.findPulledPublicationsBefore(user.getId(), after.getDate(), after.getId(), window);
+
+		if (!pulled.isEmpty()) {
+			var seen = new HashSet<Long>();
+			merged.addAll(pulled);
+			merged.removeIf(p -> !seen.add(p.getId()));
+			merged.sort(NEWEST_FIRST);
+		}
+
+		var content = merged.subList(0, Math.min(pageSize, merged.size()));
+		return new SliceImpl<>(new ArrayList<>(content), PageRequest.of(0, pageSize), merged.size() > pageSize);
+	}
+}
@@ -1,7 +1,6 @@
 package com.example.service.impl;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
@@ -10,22 +9,27 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.security.authentication.AnonymousAuthenticationToken;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.example.jwt.JwtAuthenticationResolver;
+import com.example.jwt.PrincipalCache;
 import com.example.rest.dao.FollowerRepository;
 import com.example.rest.dao.UserRepository;
-import com.example.rest.model.Follower;
 import com.example.rest.model.User;
+import com.example.service.FileStorageService;
+import com.example.service.FollowGraph;
+import com.example.service.StorageCollector;
 import com.example.service.UserService;
+import com.example.service.WriteCoalescer;
+import com.example.web.dto.Cursor;
 import com.example.web.dto.response.AvatarResponse;
 import com.example.web.dto.response.UserDto;
 import com.example.web.exception.EntityNotFoundException;
-import com.example.web.mappers.MapstructMapper;
 
 @Service
 @Transactional
@@ -40,59 +44,53 @@ public class UserServiceImpl implements UserService {
     private FollowerRepository followerRepository;
     
     @Autowired
-    private MapstructMapper mapper;
+    private WriteCoalescer writeCoalescer;
+    
+    @Autowired
+    private PrincipalCache principalCache;
+    
+    @Autowired
+    private JwtAuthenticationResolver authenticationResolver;
+    
+    @Autowired
+    private FollowGraph followGraph;
+    
+    @Autowired
+    private StorageCollector storageCollector;
     
 	@Override
 	@Async
 	public CompletableFuture<UserDto> getUserData(String username){
 		
-		var optional = userRepository.findByUsername(username);
-		
-		if(optional.isPresent())
-		{	
-			var user = optional.get();
-			var result = mapper.userToUserDto(user);
-			result.setPostCount(user.getPosts().size());
-			result.setFollowed(isAnonymous() ? false : followerRepository.isFollowed(getAuthenticatedUser(), user));
-			result.setFollowerCount(user.getFollowers().size());
-			result.setFollowingCount(user.getFollowing().size());
-			return CompletableFuture.completedFuture(result);
-        }
-		else {
-			throw new EntityNotFoundException(User.class, USERNAME, username);
-		}
+		var result = userRepository.findProfileByUsername(username)
+				.orElseThrow(() -> new EntityNotFoundException(User.class, USERNAME, username));
+		result.setFollowed(isAnonymous() ? false : followGraph.isFollowed(getAuthenticatedUser().getId(), result.getId()));
+		return CompletableFuture.completedFuture(result);
 	}
 	
 
 	@Override
-	@Async
 	public void follow(String username) {
-		
-		var user = userRepository.findByUsername(username);
-		
-		if (user.isPresent()) {
-			followerRepository.save(new Follower(getAuthenticatedUser(), user.get()));
-		}
+		var id = userRepository.findIdByUsername(username)
+				.orElseThrow(() -> new EntityNotFoundException(User.class, USERNAME, username));
+		writeCoalescer.follow(getAuthenticatedUser().getId(), id);
 	}
 	
 	@Override
-	@Async
 	public void unfollow(String username) {
-		
-		int row = followerRepository.unfollow(getAuthenticatedUser(), username);
-		
-		if (row == 0) {
-			throw new EntityNotFoundException(User.class, USERNAME, username);
-		}
+		var id = userRepository.findIdByUsername(username)
+				.orElseThrow(() -> new EntityNotFoundException(User.class, USERNAME, username));
+		writeCoalescer.unfollow(getAuthenticatedUser().getId(), id);
 	}
 	
 
 	@Override
-	@Async
-	public CompletableFuture<AvatarResponse> setProfilePicture(String path) {
-		path = "http://localhost:8081/api/user/profile_picture/" + path;
-		userRepository.setProfilePicture(getAuthenticatedUser(), path);
-		return CompletableFuture.completedFuture(new AvatarResponse(true, path, HttpStatus.OK));
+	public AvatarResponse setProfilePicture(String key) {
+		var previous = getAuthenticatedUser().getAvatarKey();
+		userRepository.setProfilePicture(getAuthenticatedUser(), key);
+		storageCollector.release(FileStorageService.AVATARS, List.of(previous));
+		principalCache.invalidate(getAuthenticatedUser().getEmail());
+		return new AvatarResponse(true, key, HttpStatus.OK);
 	}
 	
 
@@ -108,7 +106,10 @@ public class UserServiceImpl implements UserService {
 
 	@Override
 	public AvatarResponse resetProfilePicture() {
+		var previous = getAuthenticatedUser().getAvatarKey();
 		userRepository.resetProfilePicture(getAuthenticatedUser());
+		storageCollector.release(FileStorageService.AVATARS, List.of(previous));
+		principalCache.invalidate(getAuthenticatedUser().getEmail());
 		return getProfilePicture();
 	}
 
@@ -116,52 +117,50 @@ public class UserServiceImpl implements UserService {
 	@Override
 	@Async
 	public CompletableFuture<List<UserDto>> getSubscriptions(String username, int pageNo, int pageSize) throws InterruptedException {
-		Pageable paging = PageRequest.of(pageNo, pageSize);
+		Pageable paging = PageRequest.of(pageNo, pageSize, Sort.by("id").descending());
 		var slicedResult = followerRepository.findAllToByFromUsername(username, paging);
-		List<UserDto> list = new ArrayList<>();
-		
-		if (slicedResult.hasContent()) {
-			Iterator<Follower> it = slicedResult.iterator();
-			
-			while(it.hasNext()) {
-				Follower f = it.next();
-				var result = mapper.userToUserDto(f.getTo());
-				result.setFollowed(isAnonymous() ? false : followerRepository.isFollowed(getAuthenticatedUser(), f.getTo()));
-
-				list.add(result);
-			}
-		}
-		return CompletableFuture.completedFuture(list);
+		return CompletableFuture.completedFuture(withFollowedFlags(slicedResult));
 	}
 	
 	@Override
 	@Async
 	public CompletableFuture<List<UserDto>> getSubscribers(String username, int pageNo, int pageSize) {
-		Pageable paging = PageRequest.of(pageNo, pageSize);
-		Slice<Follower> slicedResult = followerRepository.findAllFromByToUsername(username, paging);
-		List<UserDto> list = new ArrayList<>();
-		if (slicedResult.hasContent()) {
-			
-			Iterator<Follower> it = slicedResult.iterator();
-			
-			while(it.hasNext()) {
-				Follower f = it.next();
-				var result = mapper.userToUserDto(f.getFrom());
-				result.setFollowed(isAnonymous() ? false : followerRepository.isFollowed(getAuthenticatedUser(), f.getFrom()));
-
-				list.add(result);
-			}
+		Pageable paging = PageRequest.of(pageNo, pageSize, Sort.by("id").descending());
+		var slicedResult = followerRepository.findAllFromByToUsername(username, paging);
+		return CompletableFuture.completedFuture(withFollowedFlags(slicedResult));
+	}
+	
+	@Override
+	@Async
+	public CompletableFuture<List<UserDto>> getSubscriptions(String username, Cursor after, int pageSize) {
+		var slicedResult = followerRepository.findAllToByFromUsernameBefore(username, after.getId(), PageRequest.of(0, pageSize));
+		return CompletableFuture.completedFuture(withFollowedFlags(slicedResult));
+	}
+	
+	@Override
+	@Async
+	public CompletableFuture<List<UserDto>> getSubscribers(String username, Cursor after, int pageSize) {
+		var slicedResult = followerRepository.findAllFromByToUsernameBefore(username, after.getId(), PageRequest.of(0, pageSize));
+		return CompletableFuture.completedFuture(withFollowedFlags(slicedResult));
+	}
+	
+	private List<UserDto> withFollowedFlags(Slice<UserDto> slicedResult) {
+		List<UserDto> list = new ArrayList<>(slicedResult.getContent());
+		
+		if (!list.isEmpty() && !isAnonymous()) {
+			var currentId = getAuthenticatedUser().getId();
+			list.forEach(u -> u.setFollowed(followGraph.isFollowed(currentId, u.getId())));
 		}
-		return CompletableFuture.completedFuture(list);
+		return list;
 	}
 	
 	@Override
 	public User getAuthenticatedUser() {
-		return (User) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+		return (User) authenticationResolver.resolve().getPrincipal();
 	}
 	
 	@Override
 	public boolean isAnonymous() {
-		return SecurityContextHolder.getContext().getAuthentication() instanceof AnonymousAuthenticationToken;
+		return authenticationResolver.resolve() instanceof AnonymousAuthenticationToken;
 	}	
 }
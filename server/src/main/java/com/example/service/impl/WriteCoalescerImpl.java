@@ -0,0 +1,299 @@
+package com.example.service.impl;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.rest.model.SnowflakeIdGenerator;
+import com.example.service.FollowGraph;
+import com.example.service.TimelineService;
+import com.example.service.WriteCoalescer;
+
+/**
+ * Buffers like and follow commands and writes them in bulk every few
+ * milliseconds. Only the latest intent per (user, target) pair is kept, so a
+ * like followed by a dislike before the flush cancels out. Each flush runs in
+ * one transaction: existing rows are selected first to know which commands
+ * actually change something, then rows are inserted and deleted with
+ * multi-row statements and the counters are adjusted by the net deltas.
+ * The follow graph and timelines are updated once the transaction has
+ * committed; a failure there does not requeue the batch.
+ */
+@Service
+public class WriteCoalescerImpl implements WriteCoalescer {
+
+	private static final Logger logger = LoggerFactory.getLogger(WriteCoalescerImpl.class);
+	private static final int CHUNK_SIZE = 500;
+
+	private static final String LIKES = "postlikes";
+	private static final String FOLLOWS = "follower";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private FollowGraph followGraph;
+
+	@Autowired
+	private TimelineService timelineService;
+
+	private final Map<Pair, Boolean> likes = new ConcurrentHashMap<>();
+	private final Map<Pair, Boolean> follows = new ConcurrentHashMap<>();
+
+	@Override
+	public void like(long userId, long postId) {
+		likes.put(new Pair(userId, postId), Boolean.TRUE);
+	}
+
+	@Override
+	public void dislike(long userId, long postId) {
+		likes.put(new Pair(userId, postId), Boolean.FALSE);
+	}
+
+	@Override
+	public void follow(long from, long to) {
+		follows.put(new Pair(from, to), Boolean.TRUE);
+	}
+
+	@Override
+	public void unfollow(long from, long to) {
+		follows.put(new Pair(from, to), Boolean.FALSE);
+	}
+
+	@Override
+	@PreDestroy
+	@Scheduled(fixedDelayString = "${writes.flush.delay-ms}")
+	public synchronized void flush() {
+		var likeBatch = drain(likes);
+		var followBatch = drain(follows);
+
+		if (likeBatch.isEmpty() && followBatch.isEmpty()) {
+			return;
+		}
+
+		Map<Pair, Boolean> changes;
+		try {
+			changes = transactionTemplate.execute(status -> {
+				var liked = write(LIKES, "user_id", "post_id", likeBatch);
+				var followed = write(FOLLOWS, "from_id", "to_id", followBatch);
+				updateLikeCounts(liked);
+				updateUserStats(followed);
+				return followed;
+			});
+		} catch (RuntimeException e) {
+			logger.error("Flush of {} likes and {} follows failed, commands requeued", likeBatch.size(), followBatch.size(), e);
+			likeBatch.forEach(likes::putIfAbsent);
+			followBatch.forEach(follows::putIfAbsent);
+			return;
+		}
+
+		changes.forEach((pair, added) -> {
+			try {
+				if (added) {
+					followGraph.follow(pair.user, pair.target);
+					timelineService.backfill(pair.user, pair.target);
+				} else {
+					followGraph.unfollow(pair.user, pair.target);
+					timelineService.removeAuthor(pair.user, pair.target);
+				}
+			} catch (RuntimeException e) {
+				logger.error("Follow {} -> {} committed but the graph or timeline could not be updated", pair.user, pair.target, e);
+			}
+		});
+	}
+
+	/* Entries updated while draining keep their newer intent for the next flush. */
+	private static Map<Pair, Boolean> drain(Map<Pair, Boolean> pending) {
+		var batch = new HashMap<Pair, Boolean>();
+
+		for (var entry : pending.entrySet()) {
+			if (pending.remove(entry.getKey(), entry.getValue())) {
+				batch.put(entry.getKey(), entry.getValue());
+			}
+		}
+		return batch;
+	}
+
+	/**
+	 * Applies a batch to a (user, target) link table. INSERT IGNORE skips rows
+	 * that fail a key or foreign key check and a delete may find nothing, so the
+	 * changed pairs are read back rather than assumed.
+	 *
+	 * @return the pairs that were actually inserted (true) or deleted (false)
+	 */
+	private Map<Pair, Boolean> write(String table, String userColumn, String targetColumn, Map<Pair, Boolean> batch) {
+		if (batch.isEmpty()) {
+			return Collections.emptyMap();
+		}
+
+		var existing = findExisting(table, userColumn, targetColumn, batch.keySet());
+		var inserts = new ArrayList<Pair>();
+		var deletes = new ArrayList<Pair>();
+
+		batch.forEach((pair, add) -> {
+			if (add && !existing.contains(pair)) {
+				inserts.add(pair);
+			} else if (!add && existing.contains(pair)) {
+				deletes.add(pair);
+			}
+		});
+
+		var now = new Timestamp(System.currentTimeMillis());
+		for (var chunk : chunks(inserts)) {
+			var sql = new StringBuilder("INSERT IGNORE INTO ").append(table).append(" (id, ").append(userColumn).append(", ")
+					.append(targetColumn).append(LIKES.equals(table) ? ", date) VALUES " : ") VALUES ");
+			var args = new ArrayList<Object>();
+
+			for (var pair : chunk) {
+				sql.append(args.isEmpty() ? "" : ", ").append(LIKES.equals(table) ? "(?, ?, ?, ?)" : "(?, ?, ?)");
+				args.add(SnowflakeIdGenerator.nextId());
+				args.add(pair.user);
+				args.add(pair.target);
+				if (LIKES.equals(table)) {
+					args.add(now);
+				}
+			}
+			jdbcTemplate.update(sql.toString(), args.toArray());
+		}
+		for (var chunk : chunks(deletes)) {
+			var args = new ArrayList<Object>();
+			jdbcTemplate.update("DELETE FROM " + table + " WHERE (" + userColumn + ", " + targetColumn + ") IN ("
+					+ tuples(chunk, args) + ")", args.toArray());
+		}
+
+		var candidates = new HashSet<Pair>(inserts);
+		candidates.addAll(deletes);
+		var present = candidates.isEmpty() ? Collections.<Pair>emptySet()
+				: findExisting(table, userColumn, targetColumn, candidates);
+		var changes = new HashMap<Pair, Boolean>();
+		inserts.stream().filter(present::contains).forEach(pair -> changes.put(pair, Boolean.TRUE));
+		deletes.stream().filter(pair -> !present.contains(pair)).forEach(pair -> changes.put(pair, Boolean.FALSE));
+		if (changes.size() < candidates.size()) {
+			logger.warn("{} of {} writes to {} had no effect", candidates.size() - changes.size(), candidates.size(), table);
+		}
+		return changes;
+	}
+
+	private Set<Pair> findExisting(String table, String userColumn, String targetColumn, Set<Pair> pairs) {
+		var existing = new HashSet<Pair>();
+
+		for (var chunk : chunks(new ArrayList<>(pairs))) {
+			var args = new ArrayList<Object>();
+			jdbcTemplate.query("SELECT " + userColumn + ", " + targetColumn + " FROM " + table + " WHERE ("
+					+ userColumn + ", " + targetColumn + ") IN (" + tuples(chunk, args) + ")",
+					rs -> {
+						existing.add(new Pair(rs.getLong(1), rs.getLong(2)));
+					}, args.toArray());
+		}
+		return existing;
+	}
+
+	private void updateLikeCounts(Map<Pair, Boolean> changes) {
+		var deltas = new HashMap<Long, Integer>();
+		changes.forEach((pair, added) -> deltas.merge(pair.target, added ? 1 : -1, Integer::sum));
+
+		var args = new ArrayList<Object[]>();
+		deltas.forEach((postId, delta) -> {
+			if (delta != 0) {
+				args.add(new Object[] { delta, postId });
+			}
+		});
+		if (!args.isEmpty()) {
+			jdbcTemplate.batchUpdate("UPDATE post SET like_count = GREATEST(like_count + ?, 0) WHERE id = ?", args);
+		}
+	}
+
+	private void updateUserStats(Map<Pair, Boolean> changes) {
+		var following = new HashMap<Long, Integer>();
+		var followers = new HashMap<Long, Integer>();
+		changes.forEach((pair, added) -> {
+			following.merge(pair.user, added ? 1 : -1, Integer::sum);
+			followers.merge(pair.target, added ? 1 : -1, Integer::sum);
+		});
+
+		var args = new ArrayList<Object[]>();
+		var users = new HashSet<>(following.keySet());
+		users.addAll(followers.keySet());
+		for (var userId : users) {
+			int fr = followers.getOrDefault(userId, 0);
+			int fg = following.getOrDefault(userId, 0);
+			if (fr != 0 || fg != 0) {
+				args.add(new Object[] { userId, Math.max(fr, 0), Math.max(fg, 0), fr, fg });
+			}
+		}
+		if (!args.isEmpty()) {
+			jdbcTemplate.batchUpdate("INSERT INTO user_stats (user_id, post_count, follower_count, following_count) "
+					+ "VALUES (?, 0, ?, ?) ON DUPLICATE KEY UPDATE "
+					+ "follower_count = GREATEST(follower_count + ?, 0), "
+					+ "following_count = GREATEST(following_count + ?, 0)", args);
+		}
+	}
+
+	private static String tuples(List<Pair> pairs, List<Object> args) {
+		var sql = new StringBuilder();
+
+		for (var pair : pairs) {
+			sql.append(args.isEmpty() ? "(?, ?)" : ", (?, ?)");
+			args.add(pair.user);
+			args.add(pair.target);
+		}
+		return sql.toString();
+	}
+
+	private static List<List<Pair>> chunks(List<Pair> pairs) {
+		var result = new ArrayList<List<Pair>>();
+
+		for (int i = 0; i < pairs.size(); i += CHUNK_SIZE) {
+			result.add(pairs.subList(i, Math.min(i + CHUNK_SIZE, pairs.size())));
+		}
+		return result;
+	}
+
+	private static final class Pair {
+
+		private final long user;
+		private final long target;
+
+		private Pair(long user, long target) {
+			this.user = user;
+			this.target = target;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Pair)) {
+				return false;
+			}
+			var other = (Pair) o;
+			return user == other.user && target == other.target;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(user, target);
+		}
+	}
+}
@@ -3,6 +3,7 @@ package com.example.spring;
 import java.util.concurrent.Executor;
 
 import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
@@ -16,6 +17,12 @@ import com.example.web.exception.AsyncExceptionHandler;
 @EnableAsync
 public class AsyncConfiguration implements AsyncConfigurer {
 	
+	@Value("${app.media.image.threads}")
+	private int imageThreads;
+	
+	@Value("${app.media.image.queue-capacity}")
+	private int imageQueueCapacity;
+	
 	@Override
 	@Bean("mainExecutor")
 	public Executor getAsyncExecutor() {
@@ -29,6 +36,23 @@ public class AsyncConfiguration implements AsyncConfigurer {
 		return new DelegatingSecurityContextAsyncTaskExecutor(executor);
 	}
 	
+	/**
+	 * Decoding and resizing are CPU and memory heavy, so they get their own small
+	 * pool. When it is full the upload still succeeds and the original is served.
+	 */
+	@Bean("imageExecutor")
+	public Executor imageExecutor() {
+		var executor = new ThreadPoolTaskExecutor();
+		var threads = imageThreads > 0 ? imageThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.setQueueCapacity(imageQueueCapacity);
+		executor.setThreadNamePrefix("image-");
+		executor.setWaitForTasksToCompleteOnShutdown(true);
+		executor.initialize();
+		return executor;
+	}
+	
 	@Override
 	public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
 	    return new AsyncExceptionHandler();
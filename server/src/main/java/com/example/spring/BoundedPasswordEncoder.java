@@ -0,0 +1,81 @@
+package com.example.spring;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import com.example.web.exception.ServiceUnavailableException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Runs the wrapped encoder on a small pool sized for the CPU instead of the
+ * request thread. When the pool queue is full the call fails at once with a
+ * ServiceUnavailableException, so a burst of logins cannot occupy every
+ * connector thread with hashing.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+	private final PasswordEncoder delegate;
+	private final ThreadPoolTaskExecutor executor;
+	private final long retryAfter;
+	private final Timer encodeTimer;
+	private final Timer matchesTimer;
+	private final Counter rejected;
+
+	public BoundedPasswordEncoder(PasswordEncoder delegate, ThreadPoolTaskExecutor executor, long retryAfter,
+			MeterRegistry registry) {
+		this.delegate = delegate;
+		this.executor = executor;
+		this.retryAfter = retryAfter;
+		this.encodeTimer = Timer.builder("auth.hashing.latency").tag("operation", "encode").register(registry);
+		this.matchesTimer = Timer.builder("auth.hashing.latency").tag("operation", "matches").register(registry);
+		this.rejected = Counter.builder("auth.hashing.rejected").register(registry);
+		Gauge.builder("auth.hashing.queue", executor, e -> e.getThreadPoolExecutor().getQueue().size())
+				.register(registry);
+	}
+
+	@Override
+	public String encode(CharSequence rawPassword) {
+		return submit(encodeTimer, () -> delegate.encode(rawPassword));
+	}
+
+	@Override
+	public boolean matches(CharSequence rawPassword, String encodedPassword) {
+		return submit(matchesTimer, () -> delegate.matches(rawPassword, encodedPassword));
+	}
+
+	@Override
+	public boolean upgradeEncoding(String encodedPassword) {
+		return delegate.upgradeEncoding(encodedPassword);
+	}
+
+	/* The timer covers the queueing too, which is what the caller waits for. */
+	private <T> T submit(Timer timer, Callable<T> task) {
+		var start = System.nanoTime();
+
+		try {
+			return executor.submit(task).get();
+		} catch (TaskRejectedException e) {
+			rejected.increment();
+			throw new ServiceUnavailableException("Too many authentication requests, please retry later", retryAfter, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while hashing a password", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+	}
+}
@@ -1,13 +1,19 @@
 package com.example.spring;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.method.configuration.EnableGlobalMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
 import org.springframework.security.config.http.SessionCreationPolicy;
@@ -21,17 +27,42 @@ import com.example.jwt.AuthEntryPointJwt;
 import com.example.jwt.AuthTokenFilter;
 import com.example.service.impl.UserDetailsServiceImpl;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 @Configuration
 @EnableWebSecurity
 @EnableGlobalMethodSecurity(prePostEnabled = true)
 @ComponentScan({ "com.example.jwt" })
 public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
 	
+	private static final Logger log = LoggerFactory.getLogger(WebSecurityConfig.class);
+	
+	public static final String[] PUBLIC_PATHS = { "/api/auth/**", "/api/user/photos/**", "/api/user/p/**",
+			"/api/user/**", "/api/publication/**", "/api/comment/all/**" };
+	
+	/* Served without any security processing, GET only. */
+	public static final String[] MEDIA_PATHS = { "/api/publication/view/*", "/api/user/profile_picture/*" };
+	
 	@Autowired
 	UserDetailsServiceImpl userDetailsService;
 
 	@Autowired
 	private AuthEntryPointJwt unauthorizedHandler;
+	
+	@Autowired
+	private MeterRegistry meterRegistry;
+	
+	@Value("${security.bcrypt.strength}")
+	private int bcryptStrength;
+	
+	@Value("${security.bcrypt.threads}")
+	private int hashingThreads;
+	
+	@Value("${security.bcrypt.queue-capacity}")
+	private int hashingQueueCapacity;
+	
+	@Value("${security.bcrypt.retry-after}")
+	private long retryAfter;
 
 	@Bean
 	public AuthTokenFilter authenticationJwtTokenFilter() {
@@ -51,7 +82,22 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
 
 	@Bean
 	public PasswordEncoder passwordEncoder() {
-		return new BCryptPasswordEncoder();
+		var bcrypt = new BCryptPasswordEncoder(bcryptStrength);
+		var start = System.nanoTime();
+		bcrypt.encode("strength-probe");
+		log.info("BCrypt strength {} takes {} ms per hash", bcryptStrength, (System.nanoTime() - start) / 1_000_000);
+		return new BoundedPasswordEncoder(bcrypt, hashingExecutor(), retryAfter, meterRegistry);
+	}
+	
+	@Bean
+	public ThreadPoolTaskExecutor hashingExecutor() {
+		var executor = new ThreadPoolTaskExecutor();
+		var threads = hashingThreads > 0 ? hashingThreads : Runtime.getRuntime().availableProcessors();
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.setQueueCapacity(hashingQueueCapacity);
+		executor.setThreadNamePrefix("bcrypt-");
+		return executor;
 	}
 	
 	@Bean
@@ -59,17 +105,17 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
         return new SessionRegistryImpl();
     }
 
+	@Override
+	public void configure(WebSecurity web) {
+		web.ignoring().antMatchers(HttpMethod.GET, MEDIA_PATHS);
+	}
+
 	@Override
 	protected void configure(HttpSecurity http) throws Exception {
 		http.cors().and().csrf().disable()
 			.exceptionHandling().authenticationEntryPoint(unauthorizedHandler).and()
 			.sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS).and()
-			.authorizeRequests().antMatchers("/api/auth/**").permitAll()
-			.antMatchers("/api/user/photos/**").permitAll()
-			.antMatchers("/api/user/p/**").permitAll()
-			.antMatchers("/api/user/**").permitAll()
-			.antMatchers("/api/publication/**").permitAll()
-			.antMatchers("/api/comment/all/**").permitAll()
+			.authorizeRequests().antMatchers(PUBLIC_PATHS).permitAll()
 			.anyRequest().authenticated();
 
 		http.addFilterBefore(authenticationJwtTokenFilter(), UsernamePasswordAuthenticationFilter.class);
@@ -0,0 +1,69 @@
+package com.example.task;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.rest.dao.PublicationRepository;
+import com.example.rest.dao.UserRepository;
+import com.example.rest.dao.UserStatsRepository;
+
+@Service
+public class CounterReconciliationTask {
+
+	private static final Logger log = LoggerFactory.getLogger(CounterReconciliationTask.class);
+	private static final int BATCH_SIZE = 1000;
+
+	@Autowired
+	private PublicationRepository publicationRepository;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private UserStatsRepository userStatsRepository;
+
+	/**
+	 * Recomputes like_count and comment_count from the postlikes and comment
+	 * tables and repairs the rows that drifted. Runs once at startup so that
+	 * posts created before the counters existed get their values, then on the
+	 * configured cron. Posts are processed by id ranges to keep each update short.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	@Scheduled(cron = "${cron.expression.counters}", zone="Europe/Paris")
+	public void reconcileCounters() {
+		log.info("Scheduled reconciliation of post counters");
+		var repaired = 0;
+		var ids = publicationRepository.findIdsAfter(0L, PageRequest.of(0, BATCH_SIZE));
+
+		while (!ids.isEmpty()) {
+			var last = ids.get(ids.size() - 1);
+			repaired += publicationRepository.reconcileCounters(ids.get(0), last);
+			ids = publicationRepository.findIdsAfter(last, PageRequest.of(0, BATCH_SIZE));
+		}
+		log.info("The reconciliation of post counters has been completed, {} posts repaired", repaired);
+	}
+
+	/**
+	 * Rebuilds the user_stats rows from the post and follower tables, creating
+	 * the missing ones. Same schedule and batching as the post counters.
+	 */
+	@EventListener(ApplicationReadyEvent.class)
+	@Scheduled(cron = "${cron.expression.counters}", zone="Europe/Paris")
+	public void reconcileUserStats() {
+		log.info("Scheduled reconciliation of user statistics");
+		var ids = userRepository.findIdsAfter(0L, PageRequest.of(0, BATCH_SIZE));
+
+		while (!ids.isEmpty()) {
+			var last = ids.get(ids.size() - 1);
+			userStatsRepository.reconcile(ids.get(0), last);
+			ids = userRepository.findIdsAfter(last, PageRequest.of(0, BATCH_SIZE));
+		}
+		log.info("The reconciliation of user statistics has been completed");
+	}
+}
@@ -28,7 +28,7 @@ public class FileRemovalTask {
 	@Scheduled(cron = "${cron.expression.avatars}", zone="Europe/Paris")
 	public void purgeUnusedAvatars() throws IOException {
 		log.info("Scheduled removal of unused avatars");
-		storageService.deleteUnusedPhotos();
+		storageService.deleteUnusedAvatars();
 		log.info("The removal of unused avatars has been completed");
 	}
 }
@@ -0,0 +1,25 @@
+package com.example.task;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.service.MailOutbox;
+
+@Service
+public class MailOutboxTask {
+
+	@Autowired
+	private MailOutbox mailOutbox;
+
+	/**
+	 * Drains the outbox until no email is due. Failed emails are pushed back by
+	 * their backoff and a lost connection ends the drain until the next poll.
+	 */
+	@Scheduled(fixedDelayString = "${mail.outbox.poll-ms}")
+	public void dispatch() {
+		while (mailOutbox.dispatch() > 0) {
+			// next batch
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package com.example.task;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.service.StorageCollector;
+
+@Service
+public class StorageCollectorTask {
+
+	@Autowired
+	private StorageCollector storageCollector;
+
+	/**
+	 * One bounded batch per run: the delay and the batch size cap the deletion
+	 * rate, so a large cleanup is spread over the day rather than done at once.
+	 */
+	@Scheduled(fixedDelayString = "${app.media.gc.delay-ms}")
+	public void collect() {
+		storageCollector.collect();
+	}
+}
@@ -0,0 +1,92 @@
+package com.example.task;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.example.rest.model.User;
+
+/**
+ * One-off migration from the full URLs formerly stored in {@code post.photo}
+ * and {@code utilisateur.avatar} to the {@code storage_key} and
+ * {@code avatar_key} columns. Rows are copied in batches and the legacy value
+ * is shortened to the key, which marks the row as done. The backfill is run by
+ * {@link StoredBlobMigration}, which counts the keys, once every bean is
+ * created and the schema updated, before the web server opens its
+ * connectors, so no request sees a row without its key. Dropping the
+ * legacy columns is a separate step, only taken when enabled. Does nothing
+ * when the legacy columns are already gone.
+ */
+@Service
+public class StorageKeyMigration {
+
+	private static final Logger log = LoggerFactory.getLogger(StorageKeyMigration.class);
+	private static final int BATCH_SIZE = 1000;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Value("${app.media.migration.drop-legacy-columns}")
+	private boolean dropLegacyColumns;
+
+	public void backfill() {
+		backfill("post", "photo", "storage_key", "storage_key IS NULL");
+		/* Users created since the upgrade get the legacy default URL, only a default key may be overwritten. */
+		backfill("utilisateur", "avatar", "avatar_key", "avatar_key = '" + User.DEFAULT_AVATAR + "'");
+	}
+
+	/** Drops the legacy columns whose rows have all been backfilled, when enabled. */
+	@EventListener(ApplicationReadyEvent.class)
+	public void dropLegacyColumns() {
+		if (!dropLegacyColumns) {
+			return;
+		}
+		drop("post", "photo", "storage_key IS NULL");
+		drop("utilisateur", "avatar", "avatar_key = '" + User.DEFAULT_AVATAR + "'");
+	}
+
+	private void backfill(String table, String legacy, String key, String unset) {
+		if (!columnExists(table, legacy)) {
+			return;
+		}
+
+		var pending = pending(legacy, unset);
+		var total = 0;
+		int updated;
+		do {
+			updated = jdbcTemplate.update("UPDATE " + table + " SET " + key + " = SUBSTRING_INDEX(" + legacy + ", '/', -1), "
+					+ legacy + " = SUBSTRING_INDEX(" + legacy + ", '/', -1) WHERE " + pending + " LIMIT " + BATCH_SIZE);
+			total += updated;
+		} while (updated == BATCH_SIZE);
+		log.info("Backfilled {} rows of {}.{} from {}", total, table, key, legacy);
+	}
+
+	private void drop(String table, String legacy, String unset) {
+		if (!columnExists(table, legacy)) {
+			return;
+		}
+
+		var remaining = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table + " WHERE " + pending(legacy, unset), Long.class);
+		if (remaining != null && remaining == 0) {
+			jdbcTemplate.execute("ALTER TABLE " + table + " DROP COLUMN " + legacy);
+			log.info("Dropped the legacy column {}.{}", table, legacy);
+		} else {
+			log.warn("Kept the legacy column {}.{}, {} rows are not backfilled", table, legacy, remaining);
+		}
+	}
+
+	private static String pending(String legacy, String unset) {
+		return legacy + " LIKE '%/%' AND " + unset;
+	}
+
+	private boolean columnExists(String table, String column) {
+		var count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.columns "
+				+ "WHERE table_schema = DATABASE() AND table_name = ? AND column_name = ?", Long.class, table, column);
+		return count != null && count > 0;
+	}
+}
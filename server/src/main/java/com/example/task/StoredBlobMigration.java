@@ -0,0 +1,50 @@
+package com.example.task;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.example.rest.model.User;
+import com.example.service.FileStorageService;
+
+/**
+ * One-off migration to reference counted uploads: every file referenced by a
+ * post or a user that has no {@code stored_blob} row gets one, with the number
+ * of those references. Keys that already have a row are left alone, so the
+ * migration can run on every startup. It runs before the web server opens its
+ * connectors, right after the keys are filled in by
+ * {@link StorageKeyMigration}, so no upload or release is counted before the
+ * legacy files are.
+ */
+@Service
+public class StoredBlobMigration implements SmartInitializingSingleton {
+
+	private static final Logger log = LoggerFactory.getLogger(StoredBlobMigration.class);
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private StorageKeyMigration storageKeyMigration;
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		storageKeyMigration.backfill();
+
+		var photos = jdbcTemplate.update("INSERT INTO stored_blob (path, ref_count) "
+				+ "SELECT CONCAT(?, '/', p.storage_key), COUNT(*) FROM post p WHERE p.storage_key IS NOT NULL "
+				+ "AND NOT EXISTS (SELECT 1 FROM stored_blob b WHERE b.path = CONCAT(?, '/', p.storage_key)) "
+				+ "GROUP BY p.storage_key "
+				+ "ON DUPLICATE KEY UPDATE ref_count = VALUES(ref_count)", FileStorageService.PHOTOS, FileStorageService.PHOTOS);
+		var avatars = jdbcTemplate.update("INSERT INTO stored_blob (path, ref_count) "
+				+ "SELECT CONCAT(?, '/', u.avatar_key), COUNT(*) FROM utilisateur u WHERE u.avatar_key <> ? "
+				+ "AND NOT EXISTS (SELECT 1 FROM stored_blob b WHERE b.path = CONCAT(?, '/', u.avatar_key)) "
+				+ "GROUP BY u.avatar_key "
+				+ "ON DUPLICATE KEY UPDATE ref_count = VALUES(ref_count)",
+				FileStorageService.AVATARS, User.DEFAULT_AVATAR, FileStorageService.AVATARS);
+		log.info("Counted the references of {} photos and {} avatars without a blob row", photos, avatars);
+	}
+}
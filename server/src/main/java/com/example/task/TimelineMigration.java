@@ -0,0 +1,64 @@
+package com.example.task;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.example.rest.dao.TimelineRepository;
+
+/**
+ * One-off migration to the fan-out timeline. Authors followed by more users
+ * than the fan-out limit are flagged as pull authors, then every user who
+ * follows someone but has no timeline yet gets the recent posts of each
+ * followed push author, as a new follow would. Runs before the web server
+ * opens its connectors, so no home feed is read empty. Users whose timeline
+ * already has rows are left alone, which makes later startups cheap.
+ */
+@Service
+public class TimelineMigration implements SmartInitializingSingleton {
+
+	private static final Logger log = LoggerFactory.getLogger(TimelineMigration.class);
+	private static final int BATCH_SIZE = 1000;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private TimelineRepository timelineRepository;
+
+	@Value("${timeline.fanout.max-followers}")
+	private long maxFollowers;
+
+	@Value("${timeline.backfill.size}")
+	private int backfillSize;
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		var pulled = jdbcTemplate.update("UPDATE utilisateur u SET u.timeline_pull = true WHERE u.timeline_pull = false "
+				+ "AND (SELECT COUNT(*) FROM follower f WHERE f.to_id = u.id) > ?", maxFollowers);
+
+		var users = 0;
+		var entries = 0;
+		long after = 0;
+		List<Long> batch;
+		do {
+			batch = jdbcTemplate.queryForList("SELECT DISTINCT f.from_id FROM follower f WHERE f.from_id > ? "
+					+ "AND NOT EXISTS (SELECT 1 FROM timeline t WHERE t.user_id = f.from_id) ORDER BY f.from_id LIMIT "
+					+ BATCH_SIZE, Long.class, after);
+			for (var userId : batch) {
+				for (var authorId : jdbcTemplate.queryForList("SELECT to_id FROM follower WHERE from_id = ?", Long.class, userId)) {
+					entries += timelineRepository.backfill(userId, authorId, backfillSize);
+				}
+				after = userId;
+			}
+			users += batch.size();
+		} while (batch.size() == BATCH_SIZE);
+		log.info("Timelines: {} authors switched to pull, {} users backfilled with {} entries", pulled, users, entries);
+	}
+}
@@ -0,0 +1,37 @@
+package com.example.task;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.service.FileStorageService;
+
+/**
+ * Moves uploads from the flat directories to the sharded layout a batch at a
+ * time, while the application keeps serving both. Once the roots only hold
+ * shard directories each run is a single listing.
+ */
+@Service
+public class UploadLayoutMigrationTask {
+
+	private static final Logger log = LoggerFactory.getLogger(UploadLayoutMigrationTask.class);
+
+	@Autowired
+	private FileStorageService storageService;
+
+	@Value("${app.media.migration.layout-batch-size}")
+	private int batchSize;
+
+	@Scheduled(fixedDelayString = "${app.media.migration.layout-delay-ms}")
+	public void migrateLayout() throws IOException {
+		var moved = storageService.migrateLayout(batchSize);
+		if (moved > 0) {
+			log.info("Moved {} uploads to the sharded layout", moved);
+		}
+	}
+}
@@ -19,6 +19,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.example.service.CommentService;
+import com.example.web.dto.Cursor;
 import com.example.web.dto.request.CommentReqDto;
 import com.example.web.dto.response.CommentResDto;
 
@@ -44,9 +45,13 @@ public class CommentController {
 	
 	@GetMapping(value = "/all/{postID}")
 	public CompletableFuture<List<CommentResDto>> getPosts( @PathVariable("postID") Long id,
-												@RequestParam Integer page, 
+												@RequestParam(defaultValue = "0") Integer page, 
 									            @RequestParam Integer size,
-									            @RequestParam String sort) {
+									            @RequestParam(defaultValue = "date") String sort,
+									            @RequestParam(required = false) Cursor after) {
+		if (after != null) {
+			return commentService.listComments(id, after.requireDate(), size);
+		}
 		return commentService.listComments(id, page, size, sort);
 	}
 }
@@ -0,0 +1,148 @@
+package com.example.web.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import com.example.service.Media;
+import com.example.service.impl.MediaCache.CachedResource;
+
+/**
+ * Writes uploaded images. Stored files never change once written, so they are
+ * cached for a year as immutable and revalidated with an ETag built from their
+ * size and modification time. An original standing in for a resized copy not
+ * generated yet is only cached briefly, the copy replaces it under the same
+ * URL. Images held by the media cache are written from
+ * memory; files are handed to Tomcat's sendfile when the connector supports
+ * it, otherwise copied with {@link FileChannel#transferTo}. Stores that can
+ * presign URLs are redirected to instead.
+ */
+@Component
+public class MediaResponseWriter {
+
+	private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+	private static final String FALLBACK_CACHE_CONTROL = "public, max-age=60";
+	private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+	private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+	private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+	private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+	@Value("${app.media.redirect-max-age}")
+	private Duration redirectMaxAge;
+
+	/** Sends the client to the store, the redirect is cached for a while but shorter than the URL is valid. */
+	public void redirect(URI location, HttpServletResponse response) {
+		response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=" + redirectMaxAge.toSeconds());
+		response.setHeader(HttpHeaders.LOCATION, location.toString());
+		response.setStatus(HttpServletResponse.SC_FOUND);
+	}
+
+	/** Writes the file with the media type recorded on upload, not one guessed from its name. */
+	public void write(Media media, String mediaType, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		Resource resource = media.getResource();
+		long length = resource.contentLength();
+		long lastModified = resource.lastModified();
+		String etag = "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+
+		response.setHeader(HttpHeaders.CACHE_CONTROL, media.isExact() ? CACHE_CONTROL : FALLBACK_CACHE_CONTROL);
+		response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+		if (new ServletWebRequest(request, response).checkNotModified(etag, lastModified)) {
+			return;
+		}
+
+		response.setContentType(mediaType);
+		response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + resource.getFilename() + "\"");
+
+		long start = 0;
+		long end = length - 1;
+		String range = request.getHeader(HttpHeaders.RANGE);
+		if (range != null && ifRangeMatches(request, etag, lastModified)) {
+			List<HttpRange> ranges;
+			try {
+				ranges = HttpRange.parseRanges(range);
+			} catch (IllegalArgumentException e) {
+				ranges = List.of();
+			}
+			/* Several ranges would need a multipart body, sending the whole file is allowed instead. */
+			if (ranges.size() == 1) {
+				var only = ranges.get(0);
+				start = only.getRangeStart(length);
+				end = only.getRangeEnd(length);
+				if (start >= length || start > end) {
+					response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+					response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+					return;
+				}
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+			}
+		}
+
+		long count = end - start + 1;
+		response.setContentLengthLong(count);
+		if ("HEAD".equals(request.getMethod()) || count <= 0) {
+			return;
+		}
+
+		if (resource instanceof CachedResource) {
+			var body = ((CachedResource) resource).buffer();
+			body.position((int) start).limit((int) end + 1);
+			var out = Channels.newChannel(response.getOutputStream());
+			while (body.hasRemaining()) {
+				out.write(body);
+			}
+			return;
+		}
+
+		if (!resource.isFile()) {
+			try (var in = resource.getInputStream()) {
+				StreamUtils.copyRange(in, response.getOutputStream(), start, end);
+			}
+			return;
+		}
+
+		File file = resource.getFile();
+		if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+			request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+			request.setAttribute(SENDFILE_START, start);
+			request.setAttribute(SENDFILE_END, end + 1);
+			return;
+		}
+
+		try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			var out = Channels.newChannel(response.getOutputStream());
+			long position = start;
+			while (position <= end) {
+				position += channel.transferTo(position, end + 1 - position, out);
+			}
+		}
+	}
+
+	private static boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+		String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+		if (ifRange == null) {
+			return true;
+		}
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+			return ifRange.equals(etag);
+		}
+		long date = request.getDateHeader(HttpHeaders.IF_RANGE);
+		return date != -1 && date >= lastModified / 1000 * 1000;
+	}
+}
@@ -3,13 +3,12 @@ package com.example.web.controller;
 import java.io.IOException;
 import java.util.IllegalFormatException;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -18,6 +17,7 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RequestPart;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
@@ -36,6 +36,9 @@ public class PublicationController {
 	@Autowired
 	private FileStorageService storageService;
 	
+	@Autowired
+	private MediaResponseWriter mediaWriter;
+	
 	@Autowired
 	private PublicationService publicationService;
 
@@ -63,12 +66,15 @@ public class PublicationController {
 	}
 	
 	@GetMapping("/view/{filename:.+}")
-	public ResponseEntity<Resource> getFile(@PathVariable String filename) throws IOException {
-		Resource file = storageService.loadPhoto(filename);
-		return ResponseEntity.ok()
-				.header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getFilename() + "\"")
-				.contentType(MediaType.IMAGE_JPEG)
-				.body(file);
+	public void getFile(@PathVariable String filename,
+			@RequestParam(name = "size", required = false) Integer size,
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		var redirect = storageService.photoRedirect(filename, size);
+		if (redirect.isPresent()) {
+			mediaWriter.redirect(redirect.get(), response);
+			return;
+		}
+		mediaWriter.write(storageService.loadPhoto(filename, size), storageService.photoMediaType(filename), request, response);
 	}
 
 	@PostMapping("/create")
@@ -78,6 +84,18 @@ public class PublicationController {
 		storageService.save(file, description);
         return new ResponseEntity<>(SUCCESS_MESSAGE, HttpStatus.CREATED);
 	}
+
+	/**
+	 * Takes the image as the raw request body so it is streamed to disk
+	 * instead of being buffered by the multipart resolver first.
+	 */
+	@PostMapping(value = "/upload", consumes = "image/*")
+	public ResponseEntity<String> uploadPost(
+				@RequestParam(name="description", required=false) String description,
+				HttpServletRequest request) throws IOException {
+		storageService.save(request.getInputStream(), request.getContentLengthLong(), description);
+        return new ResponseEntity<>(SUCCESS_MESSAGE, HttpStatus.CREATED);
+	}
 	
 
 }
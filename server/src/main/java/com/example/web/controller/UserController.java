@@ -5,13 +5,11 @@ import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.Resource;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -27,6 +25,7 @@ import org.springframework.web.multipart.MultipartFile;
 import com.example.service.FileStorageService;
 import com.example.service.PublicationService;
 import com.example.service.UserService;
+import com.example.web.dto.Cursor;
 import com.example.web.dto.response.AvatarResponse;
 import com.example.web.dto.response.PublicationDto;
 import com.example.web.dto.response.UserDto;
@@ -46,6 +45,9 @@ public class UserController {
 	@Autowired
 	private FileStorageService storageService;
 	
+	@Autowired
+	private MediaResponseWriter mediaWriter;
+	
 	@Autowired
 	private PublicationService publicationService;
 
@@ -65,36 +67,57 @@ public class UserController {
     }
 	
 	@GetMapping(value = "/favorites")
-	public CompletableFuture<List<PublicationDto>> getFavorites(	@RequestParam Integer page, 
+	public CompletableFuture<List<PublicationDto>> getFavorites(	@RequestParam(defaultValue = "0") Integer page, 
 						            @RequestParam Integer size,
-						            @RequestParam String sort) {
+						            @RequestParam(defaultValue = "id") String sort,
+						            @RequestParam(required = false) Cursor after) {
+		if (after != null) {
+			return postService.getFavorites(after.requireNoDate(), size);
+		}
 		return postService.getFavorites(page, size, sort);
 	}
 	
 	@GetMapping(value = "/new")
-	public  CompletableFuture<List<PublicationDto>> getNewPublications(@RequestParam Integer page, @RequestParam Integer size) {
+	public  CompletableFuture<List<PublicationDto>> getNewPublications(@RequestParam(defaultValue = "0") Integer page, 
+									@RequestParam Integer size,
+									@RequestParam(required = false) Cursor after) {
+		if (after != null) {
+			return publicationService.getNewPublications(after.requireDate(), size);
+		}
 		return publicationService.getNewPublications(page, size);
 	}
 	
 	@GetMapping(value = "/posts/{username}")
 	public CompletableFuture<List<PublicationDto>> getPosts( @PathVariable("username") String username,
-												@RequestParam Integer page, 
+												@RequestParam(defaultValue = "0") Integer page, 
 									            @RequestParam Integer size,
-									            @RequestParam String sort) {
+									            @RequestParam(defaultValue = "date") String sort,
+									            @RequestParam(required = false) Cursor after) {
+		if (after != null) {
+			return postService.getUserPublications(username, after.requireDate(), size);
+		}
 		return postService.getUserPublications(username, page, size, sort);
 	}
 	
 	@GetMapping(value = "/subscriptions/{username}")
 	public CompletableFuture<List<UserDto>> getSubscriptions( @PathVariable("username") String username,
-												@RequestParam Integer page, 
-									            @RequestParam Integer size) throws InterruptedException {
+												@RequestParam(defaultValue = "0") Integer page, 
+									            @RequestParam Integer size,
+									            @RequestParam(required = false) Cursor after) throws InterruptedException {
+		if (after != null) {
+			return userService.getSubscriptions(username, after.requireNoDate(), size);
+		}
 		return userService.getSubscriptions(username, page, size);
 	}
 	
 	@GetMapping(value = "/subscribers/{username}")
 	public CompletableFuture<List<UserDto>> getSubscribers( @PathVariable("username") String username,
-												@RequestParam Integer page, 
-									            @RequestParam Integer size) {
+												@RequestParam(defaultValue = "0") Integer page, 
+									            @RequestParam Integer size,
+									            @RequestParam(required = false) Cursor after) {
+		if (after != null) {
+			return userService.getSubscribers(username, after.requireNoDate(), size);
+		}
 		return userService.getSubscribers(username, page, size);
 	}
 	
@@ -107,6 +130,11 @@ public class UserController {
     public CompletableFuture<AvatarResponse> setProfilePicture(@RequestPart("avatar") MultipartFile file) throws IncorrectFileExtensionException, IOException {
 		return storageService.saveAvatar(file);
 
+    }
+	
+	@PostMapping(value= "/profile_picture/upload", consumes = "image/*")
+    public CompletableFuture<AvatarResponse> uploadProfilePicture(HttpServletRequest request) throws IncorrectFileExtensionException, IOException {
+		return storageService.saveAvatar(request.getInputStream(), request.getContentLengthLong());
     }
 	
 	@DeleteMapping(value= "/reset_profile_picture")
@@ -115,12 +143,15 @@ public class UserController {
     }
 	
 	@GetMapping("/profile_picture/{filename:.+}")
-	public ResponseEntity<Resource> getFile(@PathVariable String filename) throws IOException {
-		Resource file = storageService.loadAvatar(filename);
-		return ResponseEntity.ok()
-				.header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getFilename() + "\"")
-				.contentType(MediaType.IMAGE_JPEG)
-				.body(file);
+	public void getFile(@PathVariable String filename,
+			@RequestParam(name = "size", required = false) Integer size,
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		var redirect = storageService.avatarRedirect(filename, size);
+		if (redirect.isPresent()) {
+			mediaWriter.redirect(redirect.get(), response);
+			return;
+		}
+		mediaWriter.write(storageService.loadAvatar(filename, size), storageService.avatarMediaType(filename), request, response);
 	}
 	
 	
@@ -0,0 +1,85 @@
+package com.example.web.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+import com.example.web.exception.InvalidCursorException;
+
+/**
+ * Opaque position in a list sorted by (date, id) descending. Clients receive it
+ * as the {@code cursor} of every item and send the last one back as
+ * {@code after} to get the next page. Lists that are only ordered by id carry
+ * no date.
+ */
+public class Cursor {
+
+	private static final String SEPARATOR = ":";
+
+	private final Timestamp date;
+
+	private final long id;
+
+	public Cursor(Timestamp date, long id) {
+		this.date = date;
+		this.id = id;
+	}
+
+	public Cursor(long id) {
+		this(null, id);
+	}
+
+	public Timestamp getDate() {
+		return date;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String encode() {
+		var payload = date == null
+				? String.valueOf(id)
+				: id + SEPARATOR + date.getTime() + SEPARATOR + date.getNanos();
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(payload.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/** For lists sorted by (date, id), rejects a cursor taken from a list sorted by id only. */
+	public Cursor requireDate() {
+		if (date == null) {
+			throw new InvalidCursorException("This list is sorted by date, the cursor carries none");
+		}
+		return this;
+	}
+
+	/** For lists sorted by id only, rejects a cursor taken from a list sorted by date. */
+	public Cursor requireNoDate() {
+		if (date != null) {
+			throw new InvalidCursorException("This list is sorted by id, the cursor carries a date");
+		}
+		return this;
+	}
+
+	public static Cursor decode(String token) {
+		try {
+			var parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(SEPARATOR);
+
+			if (parts.length == 1) {
+				return new Cursor(Long.parseLong(parts[0]));
+			}
+			else if (parts.length == 3) {
+				var date = new Timestamp(Long.parseLong(parts[1]));
+				date.setNanos(Integer.parseInt(parts[2]));
+				return new Cursor(date, Long.parseLong(parts[0]));
+			}
+		} catch (IllegalArgumentException e) {
+			throw new InvalidCursorException("Malformed cursor: " + token, e);
+		}
+		throw new InvalidCursorException("Malformed cursor: " + token);
+	}
+
+	@Override
+	public String toString() {
+		return encode();
+	}
+}
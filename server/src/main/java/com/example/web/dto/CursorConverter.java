@@ -0,0 +1,13 @@
+package com.example.web.dto;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.stereotype.Component;
+
+@Component
+public class CursorConverter implements Converter<String, Cursor> {
+
+	@Override
+	public Cursor convert(String source) {
+		return source.isBlank() ? null : Cursor.decode(source);
+	}
+}
@@ -0,0 +1,45 @@
+package com.example.web.dto;
+
+import java.io.IOException;
+
+import org.springframework.beans.factory.annotation.Value;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * Turns a storage key into the URL it is served from. Only the key is stored,
+ * the host comes from {@code app.media.base-url} when the response is written.
+ * Instances are created by Spring, which injects the base.
+ */
+public abstract class MediaUrlSerializer extends JsonSerializer<String> {
+
+	@Value("${app.media.base-url}")
+	private String baseUrl;
+
+	private final String path;
+
+	protected MediaUrlSerializer(String path) {
+		this.path = path;
+	}
+
+	@Override
+	public void serialize(String key, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+		gen.writeString(baseUrl + path + key);
+	}
+
+	public static class Photo extends MediaUrlSerializer {
+
+		public Photo() {
+			super("/api/publication/view/");
+		}
+	}
+
+	public static class Avatar extends MediaUrlSerializer {
+
+		public Avatar() {
+			super("/api/user/profile_picture/");
+		}
+	}
+}
@@ -2,10 +2,14 @@ package com.example.web.dto.response;
 
 import org.springframework.http.HttpStatus;
 
+import com.example.web.dto.MediaUrlSerializer;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
 public class AvatarResponse {
 	
 	private boolean has_avatar;
 	
+	@JsonSerialize(using = MediaUrlSerializer.Avatar.class)
 	private String avatar;
 	
 	private HttpStatus status;
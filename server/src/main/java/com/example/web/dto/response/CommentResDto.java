@@ -2,6 +2,8 @@ package com.example.web.dto.response;
 
 import java.sql.Timestamp;
 
+import com.example.web.dto.Cursor;
+
 public class CommentResDto {
 	
 	private Long id;
@@ -12,6 +14,19 @@ public class CommentResDto {
 	
 	private UserDto utilisateur;
 	
+	private String cursor;
+	
+	public CommentResDto() {}
+	
+	public CommentResDto(Long id, String text, Timestamp date,
+			String username, String nom, String prenom, String avatar, boolean hasAvatar) {
+		this.id = id;
+		this.text = text;
+		this.date = date;
+		this.utilisateur = new UserDto(nom, prenom, username, avatar, hasAvatar);
+		this.cursor = new Cursor(date, id).encode();
+	}
+	
 	public Long getId() {
 		return id;
 	}
@@ -43,4 +58,12 @@ public class CommentResDto {
 	public void setUtilisateur(UserDto utilisateur) {
 		this.utilisateur = utilisateur;
 	}
+
+	public String getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
 }
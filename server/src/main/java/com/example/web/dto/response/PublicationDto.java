@@ -2,6 +2,10 @@ package com.example.web.dto.response;
 
 import java.sql.Timestamp;
 
+import com.example.web.dto.Cursor;
+import com.example.web.dto.MediaUrlSerializer;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
 public class PublicationDto {
 	
     private Long id;
@@ -10,6 +14,7 @@ public class PublicationDto {
 	
 	private Timestamp date;
 
+	@JsonSerialize(using = MediaUrlSerializer.Photo.class)
 	private String photo;
 	
 	private UserDto utilisateur;
@@ -21,6 +26,36 @@ public class PublicationDto {
 	private int commentsCount;
 	
 	private boolean isAuthor;
+	
+	private String cursor;
+	
+	public PublicationDto() {}
+	
+	/**
+	 * Projection constructor used by the JPQL read queries: selects the post
+	 * columns and its author in a single statement.
+	 */
+	public PublicationDto(Long id, String description, Timestamp date, String photo, int countLike, int commentsCount,
+			String username, String nom, String prenom, String avatar, boolean hasAvatar) {
+		this.id = id;
+		this.description = description;
+		this.date = date;
+		this.photo = photo;
+		this.countLike = countLike;
+		this.commentsCount = commentsCount;
+		this.utilisateur = new UserDto(nom, prenom, username, avatar, hasAvatar);
+		this.cursor = new Cursor(date, id).encode();
+	}
+	
+	/**
+	 * Same as above for lists paged on another row, such as favorites which are
+	 * paged on the like itself.
+	 */
+	public PublicationDto(Long cursorId, Long id, String description, Timestamp date, String photo, int countLike,
+			int commentsCount, String username, String nom, String prenom, String avatar, boolean hasAvatar) {
+		this(id, description, date, photo, countLike, commentsCount, username, nom, prenom, avatar, hasAvatar);
+		this.cursor = new Cursor(cursorId).encode();
+	}
 
 	public Long getId() {
 		return id;
@@ -93,4 +128,12 @@ public class PublicationDto {
 	public void setAuthor(boolean isAuthor) {
 		this.isAuthor = isAuthor;
 	}
+
+	public String getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
 }
@@ -2,17 +2,24 @@ package com.example.web.dto.response;
 
 import java.util.Collection;
 
-
 import com.example.rest.model.Role;
+import com.example.web.dto.Cursor;
+import com.example.web.dto.MediaUrlSerializer;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
 public class UserDto {
 
+	@JsonIgnore
+	private Long id;
+
 	private String nom;
 
     private String prenom;
 
     private String username;
 
+    @JsonSerialize(using = MediaUrlSerializer.Avatar.class)
     private String avatar;
     
     private boolean has_avatar;
@@ -28,6 +35,49 @@ public class UserDto {
 	private boolean followed;
 	
 	private Collection<Role> roles;
+	
+	private String cursor;
+	
+	public UserDto() {}
+	
+	public UserDto(String nom, String prenom, String username, String avatar, boolean hasAvatar) {
+		this.nom = nom;
+		this.prenom = prenom;
+		this.username = username;
+		this.avatar = avatar;
+		this.has_avatar = hasAvatar;
+	}
+	
+	/**
+	 * Projection constructor for follower lists, paged on the follower row.
+	 */
+	public UserDto(Long cursorId, Long id, String nom, String prenom, String username, String avatar, boolean hasAvatar) {
+		this(nom, prenom, username, avatar, hasAvatar);
+		this.id = id;
+		this.cursor = new Cursor(cursorId).encode();
+	}
+
+	/**
+	 * Projection constructor for profile headers, the counters come from the
+	 * user_stats row.
+	 */
+	public UserDto(Long id, String nom, String prenom, String username, String avatar, boolean hasAvatar, boolean enabled,
+			int postCount, int followerCount, int followingCount) {
+		this(nom, prenom, username, avatar, hasAvatar);
+		this.id = id;
+		this.enabled = enabled;
+		this.postCount = postCount;
+		this.followerCount = followerCount;
+		this.followingCount = followingCount;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
 
 	public String getNom() {
 		return nom;
@@ -116,4 +166,12 @@ public class UserDto {
 	public void setRoles(Collection<Role> roles) {
 		this.roles = roles;
 	}
+
+	public String getCursor() {
+		return cursor;
+	}
+
+	public void setCursor(String cursor) {
+		this.cursor = cursor;
+	}
 }
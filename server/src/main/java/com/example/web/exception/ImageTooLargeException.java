@@ -0,0 +1,14 @@
+package com.example.web.exception;
+
+public class ImageTooLargeException extends RuntimeException {
+
+	private static final long serialVersionUID = 3108541926735209417L;
+	
+	public ImageTooLargeException(String errorMessage) {
+        super(errorMessage);
+    }
+	
+	public ImageTooLargeException(String errorMessage, Throwable cause) {
+        super(errorMessage, cause);
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.web.exception;
+
+public class InvalidCursorException extends RuntimeException {
+
+	private static final long serialVersionUID = 5836270914417362258L;
+	
+	public InvalidCursorException(String errorMessage) {
+        super(errorMessage);
+    }
+	
+	public InvalidCursorException(String errorMessage, Throwable cause) {
+        super(errorMessage, cause);
+    }
+}
@@ -222,6 +222,21 @@ public class RestExceptionHandler extends ResponseEntityExceptionHandler {
 		return buildResponseEntity(new ApiError(HttpStatus.INTERNAL_SERVER_ERROR, ex));
 	}
 
+	/**
+	 * Handle InvalidCursorException. Happens when the cursor sent back by the
+	 * client is malformed or comes from a list sorted differently.
+	 *
+	 * @param ex the InvalidCursorException
+	 * @return the ApiError object
+	 */
+	@ExceptionHandler(InvalidCursorException.class)
+	protected ResponseEntity<Object> handleInvalidCursor(InvalidCursorException ex) {
+		var apiError = new ApiError(HttpStatus.BAD_REQUEST);
+		apiError.setMessage("Invalid cursor");
+		apiError.setDebugMessage(ex.getMessage());
+		return buildResponseEntity(apiError);
+	}
+
 	/**
 	 * Handle MethodArgumentTypeMismatchException.
 	 *
@@ -269,6 +284,21 @@ public class RestExceptionHandler extends ResponseEntityExceptionHandler {
 		return buildResponseEntity(apiError);
 	}
 
+	/**
+	 * Handle ImageTooLargeException. Happens when the header of an uploaded image
+	 * announces more pixels than are allowed.
+	 *
+	 * @param ex the ImageTooLargeException
+	 * @return the ApiError object
+	 */
+	@ExceptionHandler(ImageTooLargeException.class)
+	protected ResponseEntity<Object> handleImageTooLarge(ImageTooLargeException ex) {
+		var apiError = new ApiError(HttpStatus.EXPECTATION_FAILED);
+		apiError.setMessage("Server received the file but rejected it.");
+		apiError.setDebugMessage(ex.getMessage());
+		return buildResponseEntity(apiError);
+	}
+
 	/**
 	 * Handle FileNotFoundException. Happens when server fails to find the requested
 	 * file.
@@ -322,6 +352,21 @@ public class RestExceptionHandler extends ResponseEntityExceptionHandler {
 		return new ResponseEntity<>(HttpStatus.OK);
 	}
 	
+	/**
+	 * Handles ServiceUnavailableException. Happens when a bounded resource, such as
+	 * the password hashing pool, is saturated. The client is told when to retry.
+	 *
+	 * @param ex the ServiceUnavailableException
+	 * @return the ApiError object with a Retry-After header
+	 */
+	@ExceptionHandler(ServiceUnavailableException.class)
+	protected ResponseEntity<Object> handleServiceUnavailable(ServiceUnavailableException ex) {
+		var apiError = new ApiError(HttpStatus.SERVICE_UNAVAILABLE);
+		apiError.setMessage(ex.getMessage());
+		var headers = new HttpHeaders();
+		headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfter()));
+		return new ResponseEntity<>(apiError, headers, apiError.getStatus());
+	}
 	
 	private ResponseEntity<Object> buildResponseEntity(ApiError apiError) {
 		return new ResponseEntity<>(apiError, apiError.getStatus());
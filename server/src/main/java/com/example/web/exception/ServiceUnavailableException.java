@@ -0,0 +1,25 @@
+package com.example.web.exception;
+
+public class ServiceUnavailableException extends RuntimeException {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private final long retryAfter;
+
+	public ServiceUnavailableException(String errorMessage, long retryAfter) {
+        super(errorMessage);
+        this.retryAfter = retryAfter;
+    }
+	
+	public ServiceUnavailableException(String errorMessage, long retryAfter, Throwable cause) {
+        super(errorMessage, cause);
+        this.retryAfter = retryAfter;
+    }
+
+	/**
+	 * @return the number of seconds after which the client may retry
+	 */
+	public long getRetryAfter() {
+		return retryAfter;
+	}
+}
@@ -0,0 +1,74 @@
+package com.example.jwt;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+
+/**
+ * Token handling cost per request in AuthTokenFilter: the former validate then
+ * read subject sequence, which verified the signature twice, against the
+ * cached single parse. Not part of the test suite: run {@link #main} on the
+ * test classpath after {@code mvn test-compile}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtUtilsBenchmark {
+
+	private static final String SECRET = "SecretKey";
+
+	private JwtUtils jwtUtils;
+	private String token;
+
+	@Setup
+	public void setup() {
+		jwtUtils = new JwtUtils();
+		ReflectionTestUtils.setField(jwtUtils, "secret", SECRET);
+		ReflectionTestUtils.setField(jwtUtils, "cacheSize", 10000L);
+		ReflectionTestUtils.setField(jwtUtils, "cacheTtl", Duration.ofMinutes(10));
+		jwtUtils.init();
+
+		token = Jwts.builder()
+				.setSubject("user@example.com")
+				.setIssuedAt(new Date())
+				.setExpiration(new Date(System.currentTimeMillis() + 86400000))
+				.signWith(SignatureAlgorithm.HS512, SECRET)
+				.compact();
+	}
+
+	@Benchmark
+	public String validateThenParse() {
+		Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token);
+		return Jwts.parser().setSigningKey(SECRET).parseClaimsJws(token).getBody().getSubject();
+	}
+
+	@Benchmark
+	public String verifiedClaims() {
+		return jwtUtils.getVerifiedClaims(token).orElseThrow().getSubject();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(JwtUtilsBenchmark.class.getSimpleName()).build()).run();
+	}
+}
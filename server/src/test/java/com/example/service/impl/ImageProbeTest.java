@@ -0,0 +1,128 @@
+package com.example.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.example.web.exception.ImageTooLargeException;
+
+class ImageProbeTest {
+
+	@Test
+	void readsSizeOfImagesWrittenByImageIO() throws IOException {
+		assertProbed("jpg", 40, 30, encode("jpeg", 40, 30));
+		assertProbed("png", 41, 31, encode("png", 41, 31));
+		assertProbed("bmp", 42, 32, encode("bmp", 42, 32));
+	}
+
+	@Test
+	void rejectsTruncatedInput() throws IOException {
+		assertNull(probe(bytes(0xff, 0xd8, 0xff, 0xc0, 0x00, 0x11, 0x08)));
+		assertNull(probe(bytes('B', 'M', 0, 0)));
+		assertNull(probe(bytes(0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a, 0, 0, 0, 0x0d, 'I', 'H')));
+		assertNull(probe(bytes()));
+	}
+
+	@Test
+	void readsStartOfFrameAsFirstMarker() throws IOException {
+		assertProbed("jpg", 64, 32, bytes(0xff, 0xd8, 0xff, 0xc0, 0x00, 0x11, 0x08, 0x00, 0x20, 0x00, 0x40, 0x03));
+	}
+
+	@Test
+	void readsLossyWebp() throws IOException {
+		assertProbed("webp", 300, 200, webp("VP8 ", 0, 0, 0, 0x9d, 0x01, 0x2a, 300 & 0xff, 300 >> 8, 200 & 0xff, 200 >> 8));
+	}
+
+	@Test
+	void readsLosslessWebp() throws IOException {
+		var bits = (300 - 1) | ((200 - 1) << 14);
+		assertProbed("webp", 300, 200, webp("VP8L", 0x2f, bits & 0xff, (bits >> 8) & 0xff, (bits >> 16) & 0xff, bits >>> 24, 0, 0, 0, 0, 0));
+	}
+
+	@Test
+	void readsExtendedWebp() throws IOException {
+		assertProbed("webp", 70000, 2, webp("VP8X", 0, 0, 0, 0, (70000 - 1) & 0xff, ((70000 - 1) >> 8) & 0xff, (70000 - 1) >> 16, 1, 0, 0));
+	}
+
+	@Test
+	void readsBmpCoreHeader() throws IOException {
+		assertProbed("bmp", 258, 3, bytes('B', 'M', 0, 0, 0, 0, 0, 0, 0, 0, 26, 0, 0, 0,
+				12, 0, 0, 0, 2, 1, 3, 0, 1, 0, 24, 0));
+	}
+
+	@Test
+	void rejectsUnknownFormat() throws IOException {
+		assertNull(probe(bytes('G', 'I', 'F', '8', '9', 'a', 1, 0, 1, 0, 0, 0)));
+	}
+
+	@Test
+	void refusesOversizeImageFromItsHeader() throws IOException {
+		var service = new FileStorageServiceImpl();
+		ReflectionTestUtils.setField(service, "maxDimension", 10000);
+		ReflectionTestUtils.setField(service, "maxPixels", 40_000_000L);
+		var file = Files.createTempFile("probe-", ".tmp");
+		try {
+			/* A PNG announcing 50000 x 50000 pixels, nothing follows the header. */
+			Files.write(file, bytes(0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a, 0, 0, 0, 0x0d, 'I', 'H', 'D', 'R',
+					0, 0, 0xc3, 0x50, 0, 0, 0xc3, 0x50, 8, 6, 0, 0, 0));
+			assertThrows(ImageTooLargeException.class, () -> ReflectionTestUtils.invokeMethod(service, "probe", file, "invalid"));
+
+			/* Within the side limit but above the pixel limit. */
+			Files.write(file, bytes(0x89, 'P', 'N', 'G', 0x0d, 0x0a, 0x1a, 0x0a, 0, 0, 0, 0x0d, 'I', 'H', 'D', 'R',
+					0, 0, 0x27, 0x10, 0, 0, 0x27, 0x10, 8, 6, 0, 0, 0));
+			assertThrows(ImageTooLargeException.class, () -> ReflectionTestUtils.invokeMethod(service, "probe", file, "invalid"));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	private static void assertProbed(String format, int width, int height, byte[] bytes) throws IOException {
+		var image = probe(bytes);
+		assertEquals(format, image.format());
+		assertEquals(width, image.width());
+		assertEquals(height, image.height());
+	}
+
+	private static ImageProbe probe(byte[] bytes) throws IOException {
+		return ImageProbe.probe(new ByteArrayInputStream(bytes));
+	}
+
+	private static byte[] encode(String format, int width, int height) throws IOException {
+		var out = new ByteArrayOutputStream();
+		ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), format, out);
+		return out.toByteArray();
+	}
+
+	/* RIFF header, then the first chunk: its type, a length and the given payload. */
+	private static byte[] webp(String chunk, int... payload) {
+		var out = new ByteArrayOutputStream();
+		out.writeBytes("RIFF".getBytes());
+		out.writeBytes(new byte[4]);
+		out.writeBytes("WEBP".getBytes());
+		out.writeBytes(chunk.getBytes());
+		out.writeBytes(new byte[4]);
+		for (var b : payload) {
+			out.write(b);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] bytes(int... values) {
+		var bytes = new byte[values.length];
+		for (var i = 0; i < values.length; i++) {
+			bytes[i] = (byte) values[i];
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,144 @@
+package com.example.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.rest.dao.OutboxEmailRepository;
+import com.example.rest.model.OutboxEmail;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class MailOutboxImplTest {
+
+	@RegisterExtension
+	static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+	private OutboxEmailRepository outboxRepository;
+	private JavaMailSenderImpl mailSender;
+	private SimpleMeterRegistry meterRegistry;
+	private MailOutboxImpl outbox;
+
+	@BeforeEach
+	void setUp() {
+		outboxRepository = mock(OutboxEmailRepository.class);
+		mailSender = new JavaMailSenderImpl();
+		mailSender.setHost("localhost");
+		mailSender.setPort(ServerSetupTest.SMTP.getPort());
+		meterRegistry = new SimpleMeterRegistry();
+
+		outbox = new MailOutboxImpl();
+		ReflectionTestUtils.setField(outbox, "outboxRepository", outboxRepository);
+		ReflectionTestUtils.setField(outbox, "transactionTemplate", new TransactionTemplate(mock(PlatformTransactionManager.class)));
+		ReflectionTestUtils.setField(outbox, "mailSender", mailSender);
+		ReflectionTestUtils.setField(outbox, "meterRegistry", meterRegistry);
+		ReflectionTestUtils.setField(outbox, "batchSize", 50);
+		ReflectionTestUtils.setField(outbox, "lease", Duration.ofMinutes(5));
+		ReflectionTestUtils.setField(outbox, "backoff", Duration.ofSeconds(30));
+		ReflectionTestUtils.setField(outbox, "maxBackoff", Duration.ofHours(6));
+		ReflectionTestUtils.setField(outbox, "maxAttempts", 3);
+		ReflectionTestUtils.setField(outbox, "idleTimeout", Duration.ofMinutes(1));
+		ReflectionTestUtils.setField(outbox, "smtpTimeout", Duration.ofSeconds(10));
+		outbox.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		outbox.closeTransport();
+	}
+
+	@Test
+	void sendsBatchOverOneConnectionAndDeletesSentRows() throws Exception {
+		when(outboxRepository.lockDue(any(Timestamp.class), anyInt()))
+				.thenReturn(List.of(email(1L, "a@example.com", 0), email(2L, "b@example.com", 0)));
+
+		assertEquals(2, outbox.dispatch());
+
+		var received = greenMail.getReceivedMessages();
+		assertEquals(2, received.length);
+		assertEquals("subject 1", received[0].getSubject());
+		verify(outboxRepository).lease(eq(List.of(1L, 2L)), any(Timestamp.class));
+		verify(outboxRepository).deleteSent(List.of(1L, 2L));
+		verify(outboxRepository, never()).markFailed(any(), any(), anyString(), anyBoolean());
+		assertEquals(2, meterRegistry.counter("mail.outbox.sent").count());
+	}
+
+	@Test
+	void returnsZeroWhenNothingIsDue() {
+		when(outboxRepository.lockDue(any(Timestamp.class), anyInt())).thenReturn(List.of());
+
+		assertEquals(0, outbox.dispatch());
+		verify(outboxRepository, never()).lease(anyCollection(), any());
+	}
+
+	@Test
+	void setsConnectionTimeouts() {
+		var session = mailSender.getSession();
+
+		assertEquals("10000", session.getProperty("mail.smtp.connectiontimeout"));
+		assertEquals("10000", session.getProperty("mail.smtp.timeout"));
+	}
+
+	@Test
+	void chargesOnlyTheEmailBeingSentWhenTheConnectionFails() {
+		mailSender.setPort(1);
+		when(outboxRepository.lockDue(any(Timestamp.class), anyInt()))
+				.thenReturn(List.of(email(1L, "a@example.com", 0), email(2L, "b@example.com", 0)));
+		var start = System.currentTimeMillis();
+
+		assertEquals(0, outbox.dispatch());
+
+		verify(outboxRepository).markFailed(eq(1L), any(Timestamp.class), anyString(), eq(false));
+		verify(outboxRepository, never()).markFailed(eq(2L), any(), anyString(), anyBoolean());
+		verify(outboxRepository).lease(eq(List.of(2L)), argThat(at -> at.getTime() >= start + 30_000));
+		verify(outboxRepository, never()).deleteSent(anyCollection());
+		assertEquals(1, meterRegistry.counter("mail.outbox.failed").count());
+	}
+
+	@Test
+	void marksDeadAfterMaxAttempts() {
+		mailSender.setPort(1);
+		when(outboxRepository.lockDue(any(Timestamp.class), anyInt()))
+				.thenReturn(List.of(email(1L, "a@example.com", 2)));
+
+		assertEquals(0, outbox.dispatch());
+
+		verify(outboxRepository).markFailed(eq(1L), any(Timestamp.class), anyString(), eq(true));
+		assertEquals(1, meterRegistry.counter("mail.outbox.failed").count());
+	}
+
+	private static OutboxEmail email(Long id, String recipient, int attempts) {
+		var email = new OutboxEmail();
+		email.setId(id);
+		email.setSender("support@example.com");
+		email.setRecipient(recipient);
+		email.setSubject("subject " + id);
+		email.setBody("body " + id);
+		email.setAttempts(attempts);
+		return email;
+	}
+}
@@ -0,0 +1,356 @@
+package com.example.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+class S3BlobStoreTest {
+
+	private FakeS3 s3;
+	private S3BlobStore store;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		s3 = new FakeS3("media");
+		store = new S3BlobStore();
+		ReflectionTestUtils.setField(store, "bucket", "media");
+		ReflectionTestUtils.setField(store, "region", "us-east-1");
+		ReflectionTestUtils.setField(store, "endpoint", s3.endpoint());
+		ReflectionTestUtils.setField(store, "pathStyleAccess", true);
+		ReflectionTestUtils.setField(store, "accessKey", "test");
+		ReflectionTestUtils.setField(store, "secretKey", "test");
+		ReflectionTestUtils.setField(store, "presignTtl", Duration.ofMinutes(15));
+		ReflectionTestUtils.setField(store, "partSize", DataSize.ofBytes(1024));
+		store.init();
+	}
+
+	@AfterEach
+	void tearDown() {
+		store.close();
+		s3.stop();
+	}
+
+	@Test
+	void storesSmallFileInOneRequestAndServesItThroughPresignedUrl() throws Exception {
+		var bytes = randomBytes(1000);
+		var file = tempFile(bytes);
+
+		store.put("photos/ab/cd/abcd.png", file, "image/png");
+
+		assertFalse(Files.exists(file));
+		assertEquals(0, s3.multipartUploads.get());
+		assertEquals("image/png", s3.contentTypes.get("photos/ab/cd/abcd.png"));
+		assertTrue(store.exists("photos/ab/cd/abcd.png"));
+
+		var resource = store.load("photos/ab/cd/abcd.png");
+		assertEquals(1000, resource.contentLength());
+		try (var in = resource.getInputStream()) {
+			assertArrayEquals(bytes, in.readAllBytes());
+		}
+
+		var url = store.presign("photos/ab/cd/abcd.png").orElseThrow().toURL();
+		assertTrue(url.getQuery().contains("X-Amz-Signature"));
+		try (var in = url.openStream()) {
+			assertArrayEquals(bytes, in.readAllBytes());
+		}
+	}
+
+	@Test
+	void sendsLargeFileAsMultipartUpload() throws Exception {
+		var bytes = randomBytes(2500);
+
+		store.put("photos/ef/gh/efgh.jpg", tempFile(bytes), "image/jpeg");
+
+		assertEquals(1, s3.multipartUploads.get());
+		assertEquals(3, s3.parts.get());
+		assertEquals("image/jpeg", s3.contentTypes.get("photos/ef/gh/efgh.jpg"));
+		assertArrayEquals(bytes, s3.objects.get("photos/ef/gh/efgh.jpg"));
+	}
+
+	@Test
+	void abortsMultipartUploadWhenAPartFails() throws Exception {
+		s3.failingPart = 2;
+		var file = tempFile(randomBytes(2500));
+
+		assertThrows(IOException.class, () -> store.put("photos/ef/gh/efgh.jpg", file, "image/jpeg"));
+
+		assertFalse(Files.exists(file));
+		assertEquals(1, s3.aborts.get());
+		assertTrue(s3.uploads.isEmpty());
+		assertFalse(store.exists("photos/ef/gh/efgh.jpg"));
+	}
+
+	@Test
+	void missingKeyIsNotFound() throws Exception {
+		assertFalse(store.exists("photos/no/ne/none.jpg"));
+		assertThrows(FileNotFoundException.class, () -> store.load("photos/no/ne/none.jpg"));
+	}
+
+	@Test
+	void listsKeysBelowPrefixAndDeletes() throws Exception {
+		store.put("photos/ab/cd/abcd.jpg", tempFile(randomBytes(10)), "image/jpeg");
+		store.put("photos/ab/cd/160/abcd.jpg", tempFile(randomBytes(10)), "image/jpeg");
+		store.put("avatars/ab/cd/abcd.jpg", tempFile(randomBytes(10)), "image/jpeg");
+
+		assertEquals(List.of("photos/ab/cd/160/abcd.jpg", "photos/ab/cd/abcd.jpg"), list("photos/"));
+
+		store.delete("photos/ab/cd/160/abcd.jpg");
+
+		assertEquals(List.of("photos/ab/cd/abcd.jpg"), list("photos/"));
+	}
+
+	private List<String> list(String prefix) throws IOException {
+		var keys = new ArrayList<String>();
+		store.list(prefix, (key, lastModified) -> keys.add(key));
+		return keys;
+	}
+
+	private static byte[] randomBytes(int length) {
+		var bytes = new byte[length];
+		new Random(length).nextBytes(bytes);
+		return bytes;
+	}
+
+	private static Path tempFile(byte[] bytes) throws IOException {
+		var file = Files.createTempFile("s3-test-", ".tmp");
+		Files.write(file, bytes);
+		return file;
+	}
+
+	/**
+	 * The part of the S3 REST API the store uses, path style, for one bucket.
+	 * Requests are not authenticated.
+	 */
+	private static final class FakeS3 {
+
+		private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+		private final String bucket;
+		private final HttpServer server;
+		private final Map<String, byte[]> objects = new ConcurrentSkipListMap<>();
+		private final Map<String, String> contentTypes = new ConcurrentHashMap<>();
+		private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+		private final AtomicInteger multipartUploads = new AtomicInteger();
+		private final AtomicInteger parts = new AtomicInteger();
+		private final AtomicInteger aborts = new AtomicInteger();
+		private volatile int failingPart;
+		private final Instant lastModified = Instant.now();
+
+		private FakeS3(String bucket) throws IOException {
+			this.bucket = bucket;
+			server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+			server.createContext("/", this::handle);
+			server.start();
+		}
+
+		private String endpoint() {
+			return "http://localhost:" + server.getAddress().getPort();
+		}
+
+		private void stop() {
+			server.stop(0);
+		}
+
+		private void handle(HttpExchange exchange) throws IOException {
+			try (exchange) {
+				var path = exchange.getRequestURI().getPath();
+				var query = query(exchange.getRequestURI().getRawQuery());
+				var key = path.length() > bucket.length() + 2 ? path.substring(bucket.length() + 2) : "";
+				var body = body(exchange);
+
+				switch (exchange.getRequestMethod()) {
+				case "PUT":
+					if (query.containsKey("uploadId")) {
+						if (Integer.parseInt(query.get("partNumber")) == failingPart) {
+							xml(exchange, 400, "<Error><Code>InvalidPart</Code><Message>Rejected</Message></Error>");
+							break;
+						}
+						uploads.get(query.get("uploadId")).put(Integer.parseInt(query.get("partNumber")), body);
+						parts.incrementAndGet();
+					} else {
+						objects.put(key, body);
+						contentTypes.put(key, exchange.getRequestHeaders().getFirst("Content-Type"));
+					}
+					exchange.getResponseHeaders().set("ETag", etag(body));
+					exchange.sendResponseHeaders(200, -1);
+					break;
+				case "POST":
+					if (query.containsKey("uploads")) {
+						var uploadId = "upload-" + multipartUploads.incrementAndGet();
+						uploads.put(uploadId, new TreeMap<>());
+						contentTypes.put(key, exchange.getRequestHeaders().getFirst("Content-Type"));
+						xml(exchange, 200, "<InitiateMultipartUploadResult><Bucket>" + bucket + "</Bucket><Key>" + key
+								+ "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+					} else {
+						var out = new ByteArrayOutputStream();
+						for (var part : uploads.remove(query.get("uploadId")).values()) {
+							out.write(part);
+						}
+						objects.put(key, out.toByteArray());
+						xml(exchange, 200, "<CompleteMultipartUploadResult><Bucket>" + bucket + "</Bucket><Key>" + key
+								+ "</Key><ETag>&quot;multipart&quot;</ETag></CompleteMultipartUploadResult>");
+					}
+					break;
+				case "DELETE":
+					if (query.containsKey("uploadId")) {
+						uploads.remove(query.get("uploadId"));
+						aborts.incrementAndGet();
+					} else {
+						objects.remove(key);
+					}
+					exchange.sendResponseHeaders(204, -1);
+					break;
+				case "HEAD":
+				case "GET":
+					if (key.isEmpty()) {
+						list(exchange, query.getOrDefault("prefix", ""));
+						break;
+					}
+					var object = objects.get(key);
+					if (object == null) {
+						if ("HEAD".equals(exchange.getRequestMethod())) {
+							exchange.sendResponseHeaders(404, -1);
+						} else {
+							xml(exchange, 404, "<Error><Code>NoSuchKey</Code><Message>Not found</Message></Error>");
+						}
+						break;
+					}
+					exchange.getResponseHeaders().set("ETag", etag(object));
+					exchange.getResponseHeaders().set("Last-Modified", HTTP_DATE.format(lastModified));
+					exchange.getResponseHeaders().set("Content-Type", contentTypes.getOrDefault(key, "application/octet-stream"));
+					if ("HEAD".equals(exchange.getRequestMethod())) {
+						exchange.getResponseHeaders().set("Content-Length", Integer.toString(object.length));
+						exchange.sendResponseHeaders(200, -1);
+					} else {
+						exchange.sendResponseHeaders(200, object.length);
+						exchange.getResponseBody().write(object);
+					}
+					break;
+				default:
+					exchange.sendResponseHeaders(405, -1);
+				}
+			}
+		}
+
+		private void list(HttpExchange exchange, String prefix) throws IOException {
+			var contents = new StringBuilder();
+			var count = 0;
+			for (var entry : objects.entrySet()) {
+				if (entry.getKey().startsWith(prefix)) {
+					count++;
+					contents.append("<Contents><Key>").append(entry.getKey()).append("</Key><LastModified>")
+							.append(DateTimeFormatter.ISO_INSTANT.format(lastModified)).append("</LastModified><ETag>")
+							.append(etag(entry.getValue()).replace("\"", "&quot;")).append("</ETag><Size>")
+							.append(entry.getValue().length).append("</Size><StorageClass>STANDARD</StorageClass></Contents>");
+				}
+			}
+			xml(exchange, 200, "<ListBucketResult><Name>" + bucket + "</Name><Prefix>" + prefix + "</Prefix><KeyCount>"
+					+ count + "</KeyCount><MaxKeys>1000</MaxKeys><IsTruncated>false</IsTruncated>" + contents
+					+ "</ListBucketResult>");
+		}
+
+		private static void xml(HttpExchange exchange, int status, String body) throws IOException {
+			var bytes = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + body).getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().set("Content-Type", "application/xml");
+			exchange.sendResponseHeaders(status, bytes.length);
+			exchange.getResponseBody().write(bytes);
+		}
+
+		/* Plain HTTP requests are signed chunk by chunk, in the aws-chunked encoding. */
+		private static byte[] body(HttpExchange exchange) throws IOException {
+			var in = exchange.getRequestBody();
+			var sha256 = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+			if (sha256 == null || !sha256.startsWith("STREAMING-")) {
+				return in.readAllBytes();
+			}
+			var data = new DataInputStream(in);
+			var out = new ByteArrayOutputStream();
+			while (true) {
+				var header = line(data);
+				var size = Integer.parseInt(header.substring(0, header.indexOf(';')), 16);
+				if (size == 0) {
+					return out.toByteArray();
+				}
+				var chunk = new byte[size];
+				data.readFully(chunk);
+				out.write(chunk);
+				line(data);
+			}
+		}
+
+		private static String line(InputStream in) throws IOException {
+			var line = new StringBuilder();
+			int c;
+			while ((c = in.read()) != '\n') {
+				if (c == -1) {
+					throw new IOException("Truncated chunk");
+				}
+				if (c != '\r') {
+					line.append((char) c);
+				}
+			}
+			return line.toString();
+		}
+
+		private static Map<String, String> query(String raw) {
+			var query = new HashMap<String, String>();
+			if (raw != null) {
+				for (var pair : raw.split("&")) {
+					var eq = pair.indexOf('=');
+					query.put(eq < 0 ? pair : pair.substring(0, eq),
+							eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+				}
+			}
+			return query;
+		}
+
+		private static String etag(byte[] bytes) {
+			try {
+				var md5 = MessageDigest.getInstance("MD5").digest(bytes);
+				var hex = new StringBuilder("\"");
+				for (var b : md5) {
+					hex.append(String.format("%02x", b));
+				}
+				return hex.append('"').toString();
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.example.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.rest.dao.OrphanedFileRepository;
+import com.example.rest.dao.StoredBlobRepository;
+import com.example.rest.model.OrphanedFile;
+import com.example.service.FileStorageService;
+
+class StorageCollectorImplTest {
+
+	private OrphanedFileRepository orphanedFileRepository;
+	private StoredBlobRepository storedBlobRepository;
+	private FileStorageService storageService;
+	private StorageCollectorImpl collector;
+
+	@BeforeEach
+	void setUp() {
+		orphanedFileRepository = mock(OrphanedFileRepository.class);
+		storedBlobRepository = mock(StoredBlobRepository.class);
+		storageService = mock(FileStorageService.class);
+
+		collector = new StorageCollectorImpl();
+		ReflectionTestUtils.setField(collector, "orphanedFileRepository", orphanedFileRepository);
+		ReflectionTestUtils.setField(collector, "storedBlobRepository", storedBlobRepository);
+		ReflectionTestUtils.setField(collector, "transactionTemplate", new TransactionTemplate(mock(PlatformTransactionManager.class)));
+		ReflectionTestUtils.setField(collector, "storageService", storageService);
+		ReflectionTestUtils.setField(collector, "grace", Duration.ofHours(1));
+		ReflectionTestUtils.setField(collector, "batchSize", 100);
+	}
+
+	@Test
+	void keepsTheJournalEntryOfAFileThatCouldNotBeDeleted() throws Exception {
+		when(orphanedFileRepository.findDue(any(Timestamp.class), any(Pageable.class)))
+				.thenReturn(List.of(orphaned(1L, "a.jpg"), orphaned(2L, "b.jpg"), orphaned(3L, "c.jpg")));
+		when(storedBlobRepository.lock(anyString())).thenReturn(Optional.empty());
+		doThrow(new IOException("Access denied")).when(storageService).delete(FileStorageService.PHOTOS, "b.jpg");
+
+		assertEquals(3, collector.collect());
+
+		verify(storageService).delete(FileStorageService.PHOTOS, "a.jpg");
+		verify(storageService).delete(FileStorageService.PHOTOS, "c.jpg");
+		verify(orphanedFileRepository).deleteAllByIdInBatch(List.of(1L, 3L));
+		verify(orphanedFileRepository).postpone(eq(List.of(2L)), any(Timestamp.class));
+	}
+
+	private static OrphanedFile orphaned(long id, String key) {
+		var file = new OrphanedFile(FileStorageService.PHOTOS, key, new Timestamp(0));
+		file.setId(id);
+		return file;
+	}
+}